@@ -0,0 +1,252 @@
+package comp0012.main;
+
+import org.apache.bcel.generic.*;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Branch simplification pass that runs over a single method:
+ * threads jumps through unconditional GOTOs, collapses conditional branches that lead to their own fall-through,
+ * and deletes every block that cannot be reached from the method entry or from a live exception handler.
+ */
+class BranchSimplifier {
+
+    private final MethodGen methodGen;
+    private final InstructionList instructionList;
+
+    BranchSimplifier(MethodGen methodGen) {
+        this.methodGen = methodGen;
+        this.instructionList = methodGen.getInstructionList();
+    }
+
+    /** Runs all the simplifications until none of them changes the method anymore.
+     *
+     * @return the number of branches that were threaded/removed plus the number of unreachable instructions deleted.
+     */
+    int simplify() {
+        int changes = 0;
+        int roundChanges;
+        do {
+            roundChanges = threadJumps();
+            roundChanges += collapseRedundantBranches();
+            roundChanges += removeUnreachableBlocks();
+            changes += roundChanges;
+        } while (roundChanges > 0);
+        return changes;
+    }
+
+    // <============================================== Jump Threading ================================================>
+
+    // retargets every branch that lands on a GOTO to the final destination of the GOTO chain.
+    private int threadJumps() {
+        int threaded = 0;
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            Instruction instruction = handle.getInstruction();
+            if (!(instruction instanceof BranchInstruction) || instruction instanceof JsrInstruction) continue;
+
+            if (instruction instanceof Select) {
+                Select select = (Select) instruction;
+                InstructionHandle[] targets = select.getTargets();
+                for (int index = 0; index < targets.length; index++) {
+                    InstructionHandle finalTarget = followGotoChain(targets[index]);
+                    if (finalTarget != targets[index]) {
+                        select.setTarget(index, finalTarget);
+                        threaded++;
+                    }
+                }
+            }
+            BranchInstruction branch = (BranchInstruction) instruction;
+            InstructionHandle finalTarget = followGotoChain(branch.getTarget());
+            if (finalTarget != branch.getTarget()) {
+                branch.setTarget(finalTarget);
+                threaded++;
+            }
+        }
+        return threaded;
+    }
+
+    /** Follows a chain of unconditional GOTOs, stopping if the chain loops back on itself.
+     *
+     * @param target the handle that a branch currently jumps to.
+     * @return the first handle in the chain that is not a GOTO (or the last GOTO seen before a cycle).
+     */
+    private static InstructionHandle followGotoChain(InstructionHandle target) {
+        Set<InstructionHandle> visited = new HashSet<InstructionHandle>();
+        while (target.getInstruction() instanceof GotoInstruction && visited.add(target)) {
+            target = ((GotoInstruction) target.getInstruction()).getTarget();
+        }
+        return target;
+    }
+
+    // <=========================================== Branch Collapsing ================================================>
+
+    // removes GOTOs to the next instruction, and replaces IFs whose taken and fall-through paths meet with POPs.
+    private int collapseRedundantBranches() {
+        int collapsed = 0;
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            Instruction instruction = handle.getInstruction();
+            InstructionHandle next = handle.getNext();
+            if (next == null) continue;
+
+            if (instruction instanceof GotoInstruction && ((GotoInstruction) instruction).getTarget() == next) {
+                deleteHandle(handle, next);
+                collapsed++;
+            } else if (instruction instanceof IfInstruction) {
+                InstructionHandle target = ((IfInstruction) instruction).getTarget();
+                if (target != next && target != followGotoChain(next)) continue;
+
+                // the condition no longer decides anything, but its operands still have to leave the stack.
+                ConstantPoolGen cpgen = methodGen.getConstantPool();
+                Instruction pop = instruction.consumeStack(cpgen) == 1 ? new POP() : new POP2();
+                InstructionHandle popHandle = instructionList.insert(handle, pop);
+                deleteHandle(handle, popHandle);
+                collapsed++;
+            }
+        }
+        return collapsed;
+    }
+
+    // <========================================= Unreachable Code Removal ===========================================>
+
+    // deletes every instruction that cannot be reached from the entry point or from a live exception handler.
+    private int removeUnreachableBlocks() {
+        Set<InstructionHandle> reachable = findReachableInstructions();
+        trimExceptionHandlers(reachable);
+
+        int removed = 0;
+        InstructionHandle handle = instructionList.getStart();
+        while (handle != null) {
+            if (reachable.contains(handle)) {
+                handle = handle.getNext();
+                continue;
+            }
+            // delete the whole unreachable run in one go, so branches inside it are disposed with it.
+            InstructionHandle runStart = handle;
+            InstructionHandle runEnd = handle;
+            while (runEnd.getNext() != null && !reachable.contains(runEnd.getNext())) {
+                runEnd = runEnd.getNext();
+                removed++;
+            }
+            removed++;
+
+            handle = runEnd.getNext();
+            InstructionHandle replacement = handle != null ? handle : runStart.getPrev();
+            try {
+                instructionList.delete(runStart, runEnd);
+            } catch (TargetLostException e) {
+                // only dead branches (removed in a later run) and debug information can still point in here.
+                retarget(e, replacement);
+            }
+        }
+        return removed;
+    }
+
+    /** Walks the control flow graph from the method entry, adding exception handlers as roots once any instruction
+     * they protect is known to be reachable.
+     *
+     * @return the set of reachable instruction handles.
+     */
+    private Set<InstructionHandle> findReachableInstructions() {
+        Set<InstructionHandle> reachable = new HashSet<InstructionHandle>();
+        Set<CodeExceptionGen> liveHandlers = new HashSet<CodeExceptionGen>();
+        Deque<InstructionHandle> worklist = new ArrayDeque<InstructionHandle>();
+        worklist.push(instructionList.getStart());
+
+        while (!worklist.isEmpty()) {
+            while (!worklist.isEmpty()) {
+                InstructionHandle handle = worklist.pop();
+                if (!reachable.add(handle)) continue;
+
+                Instruction instruction = handle.getInstruction();
+                if (instruction instanceof BranchInstruction) {
+                    worklist.push(((BranchInstruction) instruction).getTarget());
+                    if (instruction instanceof Select) {
+                        for (InstructionHandle target : ((Select) instruction).getTargets()) worklist.push(target);
+                    }
+                }
+                // the last instruction is always a return/throw/goto in verified code, so next is only null on broken input.
+                if (!isUnconditionalTransfer(instruction) && handle.getNext() != null) worklist.push(handle.getNext());
+            }
+
+            for (CodeExceptionGen handler : methodGen.getExceptionHandlers()) {
+                if (!liveHandlers.contains(handler) && protectsReachableCode(handler, reachable)) {
+                    liveHandlers.add(handler);
+                    worklist.push(handler.getHandlerPC());
+                }
+            }
+        }
+        return reachable;
+    }
+
+    // removes handlers that protect no reachable code, and shrinks the others to their first/last reachable instruction.
+    private void trimExceptionHandlers(Set<InstructionHandle> reachable) {
+        for (CodeExceptionGen handler : methodGen.getExceptionHandlers()) {
+            InstructionHandle first = null;
+            InstructionHandle last = null;
+            for (InstructionHandle handle = handler.getStartPC(); handle != null; handle = handle.getNext()) {
+                if (reachable.contains(handle)) {
+                    if (first == null) first = handle;
+                    last = handle;
+                }
+                if (handle == handler.getEndPC()) break;
+            }
+
+            if (first == null || !reachable.contains(handler.getHandlerPC())) {
+                methodGen.removeExceptionHandler(handler);
+            } else {
+                handler.setStartPC(first);
+                handler.setEndPC(last);
+            }
+        }
+    }
+
+    private static boolean protectsReachableCode(CodeExceptionGen handler, Set<InstructionHandle> reachable) {
+        for (InstructionHandle handle = handler.getStartPC(); handle != null; handle = handle.getNext()) {
+            if (reachable.contains(handle)) return true;
+            if (handle == handler.getEndPC()) break;
+        }
+        return false;
+    }
+
+    // checks if control can never fall through to the next instruction. BCEL marks JSR/JSR_W as unconditional, but
+    // the subroutine returns (RET) to the instruction after them.
+    private static boolean isUnconditionalTransfer(Instruction instruction) {
+        if (instruction instanceof JsrInstruction) return false;
+        return instruction instanceof UnconditionalBranch || instruction instanceof ReturnInstruction ||
+                instruction instanceof RET || instruction instanceof Select;
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    /** Deletes a single instruction, moving everything that targeted it onto the replacement. Exception ranges that
+     * start or end on the deleted instruction are shrunk instead of grown.
+     *
+     * @param handle the instruction to delete.
+     * @param replacement the instruction that branches to the deleted instruction should now jump to.
+     */
+    private void deleteHandle(InstructionHandle handle, InstructionHandle replacement) {
+        for (CodeExceptionGen handler : methodGen.getExceptionHandlers()) {
+            if (handler.getStartPC() == handle && handler.getEndPC() == handle) {
+                methodGen.removeExceptionHandler(handler);
+            } else if (handler.getEndPC() == handle) {
+                handler.setEndPC(handle.getPrev());
+            } else if (handler.getStartPC() == handle) {
+                handler.setStartPC(handle.getNext());
+            }
+        }
+        try {
+            instructionList.delete(handle);
+        } catch (TargetLostException e) {
+            retarget(e, replacement);
+        }
+    }
+
+    private static void retarget(TargetLostException e, InstructionHandle replacement) {
+        for (InstructionHandle target : e.getTargets()) {
+            for (InstructionTargeter targeter : target.getTargeters()) targeter.updateTarget(target, replacement);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package comp0012.main;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.generic.ConstantPoolGen;
+
+/**
+ * Cheap linear pre-scan over the raw bytes of a method, run before each pass to check whether the pass could change
+ * anything. Decoding a method into an InstructionList and a MethodGen costs far more than the passes themselves on
+ * getters and forwarding methods, so methods without candidates are left exactly as they are in the class file.
+ *
+ * The checks over-approximate what the passes can do, skipping a method never loses an optimisation:
+ * folding needs a constant that reaches an operation or a store, dead stores need a value stored straight after
+ * it was loaded, branch simplification needs a branch or code after a return/throw, and value numbering needs the
+ * same computation or memory load opcode twice.
+ */
+class CandidateScanner {
+
+    private boolean foldingCandidates;
+    private boolean deadStoreCandidates;
+    private boolean branchCandidates;
+    private boolean subexpressionCandidates;
+
+    private CandidateScanner() {
+    }
+
+    /** Scans the code of a method once for the patterns of every pass.
+     *
+     * @param code the code attribute of the method, or null for abstract and native methods.
+     * @param cpgen constant pool of the class, used to tell numeric LDC constants from strings and classes.
+     * @return the candidates of the method, none at all if it has no code.
+     */
+    static CandidateScanner scan(Code code, ConstantPoolGen cpgen) {
+        CandidateScanner scanner = new CandidateScanner();
+        if (code != null) scanner.scan(code.getCode(), cpgen);
+        return scanner;
+    }
+
+    /** @return true if regular optimisation may fold a constant. */
+    boolean hasFoldingCandidates() {
+        return foldingCandidates;
+    }
+
+    /** @return true if the peephole pass may remove a load/store pair. */
+    boolean hasDeadStoreCandidates() {
+        return deadStoreCandidates;
+    }
+
+    /** @return true if branch simplification may convert, thread or remove a branch or unreachable code. */
+    boolean hasBranchCandidates() {
+        return branchCandidates;
+    }
+
+    /** @return true if value numbering may find a computation or a load that is done twice. */
+    boolean hasSubexpressionCandidates() {
+        return subexpressionCandidates;
+    }
+
+    /** @param hot false if the method is cold, then only branch simplification runs on it.
+     * @return true if any of the passes that run on the method may change it.
+     */
+    boolean hasCandidates(boolean hot) {
+        return branchCandidates || (hot && (foldingCandidates || deadStoreCandidates || subexpressionCandidates));
+    }
+
+    // <================================================= Scanning ===================================================>
+
+    private void scan(byte[] bytecode, ConstantPoolGen cpgen) {
+        int constantRun = 0; // number of numeric constants loaded right before the current instruction.
+        boolean previousIsLoad = false;
+        boolean[] computed = new boolean[256]; // computation opcodes seen so far.
+        int pc = 0;
+        while (pc < bytecode.length) {
+            int opcode = bytecode[pc] & 0xff;
+            int length = getLength(bytecode, pc);
+            if (opcode == Constants.WIDE) opcode = bytecode[pc + 1] & 0xff; // wide only widens the local index.
+            boolean last = pc + length >= bytecode.length;
+
+            if (isStore(opcode)) {
+                foldingCandidates |= constantRun > 0;
+                deadStoreCandidates |= previousIsLoad;
+            } else if (isConversion(opcode) || isUnaryBranch(opcode)) {
+                foldingCandidates |= constantRun > 0;
+            } else if (isBinaryOperation(opcode)) {
+                foldingCandidates |= constantRun > 1;
+            }
+            if (isBranch(opcode) || (isTerminator(opcode) && !last)) branchCandidates = true;
+            if (isComputation(opcode)) {
+                subexpressionCandidates |= computed[opcode];
+                computed[opcode] = true;
+            }
+
+            boolean numericConstant = isNumericConstant(bytecode, pc, opcode, cpgen);
+            constantRun = numericConstant ? constantRun + 1 : 0;
+            previousIsLoad = numericConstant || isLoad(opcode) || opcode == Constants.LDC || opcode == Constants.LDC_W;
+
+            if (foldingCandidates && deadStoreCandidates && branchCandidates && subexpressionCandidates) return; // nothing left to find.
+            pc += length;
+        }
+    }
+
+    /** Works out the length of the instruction at pc, operands and switch padding included.
+     *
+     * @param bytecode code of the method.
+     * @param pc offset of the opcode.
+     * @return the number of bytes up to the next instruction.
+     */
+    static int getLength(byte[] bytecode, int pc) {
+        int opcode = bytecode[pc] & 0xff;
+        if (opcode == Constants.TABLESWITCH || opcode == Constants.LOOKUPSWITCH) {
+            int operands = (pc + 4) & ~3; // the default offset is aligned to 4 bytes from the start of the code.
+            if (opcode == Constants.TABLESWITCH) {
+                int cases = readInt(bytecode, operands + 8) - readInt(bytecode, operands + 4) + 1;
+                return operands - pc + 12 + 4 * cases;
+            }
+            return operands - pc + 8 + 8 * readInt(bytecode, operands + 4);
+        }
+        if (opcode == Constants.WIDE) return (bytecode[pc + 1] & 0xff) == Constants.IINC ? 6 : 4;
+
+        int length = 1;
+        for (short type : Constants.TYPE_OF_OPERANDS[opcode]) {
+            if (type == Constants.T_INT) length += 4;
+            else if (type == Constants.T_SHORT) length += 2;
+            else length += 1;
+        }
+        return length;
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    // constants the folder can compute with: ICONST/LCONST/FCONST/DCONST, BIPUSH/SIPUSH and LDC of an int/float/long/double.
+    private static boolean isNumericConstant(byte[] bytecode, int pc, int opcode, ConstantPoolGen cpgen) {
+        if (opcode >= Constants.ICONST_M1 && opcode <= Constants.SIPUSH) return true;
+        if (opcode == Constants.LDC2_W) return true;
+        if (opcode != Constants.LDC && opcode != Constants.LDC_W) return false;
+
+        int index = opcode == Constants.LDC ? bytecode[pc + 1] & 0xff : readShort(bytecode, pc + 1);
+        byte tag = cpgen.getConstant(index).getTag();
+        return tag == Constants.CONSTANT_Integer || tag == Constants.CONSTANT_Float;
+    }
+
+    // what value numbering can reuse: arithmetic, conversions, comparisons, array lengths and field/array loads.
+    private static boolean isComputation(int opcode) {
+        return (opcode >= Constants.IADD && opcode <= Constants.LXOR) || (opcode >= Constants.I2L && opcode <= Constants.DCMPG)
+                || (opcode >= Constants.IALOAD && opcode <= Constants.SALOAD) || opcode == Constants.ARRAYLENGTH
+                || opcode == Constants.GETFIELD || opcode == Constants.GETSTATIC;
+    }
+
+    private static boolean isLoad(int opcode) {
+        return opcode >= Constants.ILOAD && opcode <= Constants.ALOAD_3;
+    }
+
+    private static boolean isStore(int opcode) {
+        return opcode >= Constants.ISTORE && opcode <= Constants.ASTORE_3;
+    }
+
+    // the conversions between int, long, float and double (I2L to D2F), the narrowing ones are not folded.
+    private static boolean isConversion(int opcode) {
+        return opcode >= Constants.I2L && opcode <= Constants.D2F;
+    }
+
+    // IFEQ to IFLE compare a single value with zero, the switches take a single selector.
+    private static boolean isUnaryBranch(int opcode) {
+        return (opcode >= Constants.IFEQ && opcode <= Constants.IFLE)
+                || opcode == Constants.TABLESWITCH || opcode == Constants.LOOKUPSWITCH;
+    }
+
+    // ADD/SUB/MUL/DIV of every type, LCMP and IF_ICMPxx, which all fold two constants into one.
+    private static boolean isBinaryOperation(int opcode) {
+        return (opcode >= Constants.IADD && opcode <= Constants.DDIV) || opcode == Constants.LCMP
+                || (opcode >= Constants.IF_ICMPEQ && opcode <= Constants.IF_ICMPLE);
+    }
+
+    // every jump and switch, plus RET (which BCEL does not count as a branch).
+    static boolean isBranch(int opcode) {
+        return (opcode >= Constants.IFEQ && opcode <= Constants.LOOKUPSWITCH)
+                || (opcode >= Constants.IFNULL && opcode <= Constants.JSR_W);
+    }
+
+    // instructions that never fall through, anything after them is only reachable through a branch or a handler.
+    private static boolean isTerminator(int opcode) {
+        return (opcode >= Constants.IRETURN && opcode <= Constants.RETURN) || opcode == Constants.ATHROW;
+    }
+
+    static int readShort(byte[] bytecode, int offset) {
+        return ((bytecode[offset] & 0xff) << 8) | (bytecode[offset + 1] & 0xff);
+    }
+
+    static int readInt(byte[] bytecode, int offset) {
+        return (readShort(bytecode, offset) << 16) | readShort(bytecode, offset + 2);
+    }
+}
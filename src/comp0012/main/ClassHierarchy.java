@@ -0,0 +1,186 @@
+package comp0012.main;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Answers superclass questions for the StackMapTable builder, which needs the common superclass of two reference
+ * types whenever they meet at a branch target. Only the class file header (up to the super_class entry) is read,
+ * from the directories of the classes being optimised first and then from the class path / JDK image.
+ * A class that cannot be found or read has no superclass the builder could rely on, so asking about it throws an
+ * IllegalStateException, which leaves the method with its original frames (see StackMapFrameBuilder.rebuildFrames).
+ */
+class ClassHierarchy {
+
+    static final String OBJECT = "java/lang/Object";
+
+    // super class name (null for java/lang/Object) and interface flag of a class.
+    private static class ClassInfo {
+        final String superName;
+        final boolean isInterface;
+
+        ClassInfo(String superName, boolean isInterface) {
+            this.superName = superName;
+            this.isInterface = isInterface;
+        }
+    }
+
+    private static final ClassInfo UNKNOWN = new ClassInfo(OBJECT, false); // cached for classes that cannot be read.
+    private static final int ACC_INTERFACE = 0x0200;
+
+    private final List<File> searchRoots = new CopyOnWriteArrayList<File>();
+    private final Map<String, ClassInfo> cache = new ConcurrentHashMap<String, ClassInfo>();
+
+    /** Adds a directory that holds class files laid out by package, e.g. the -in directory of Main.
+     *
+     * @param root the directory to search.
+     */
+    void addSearchRoot(File root) {
+        if (root != null && root.isDirectory() && !searchRoots.contains(root)) searchRoots.add(root);
+    }
+
+    /** Forgets the search roots and every class read so far, so the next run starts from its own directories. */
+    void clear() {
+        searchRoots.clear();
+        cache.clear();
+    }
+
+    /** Finds the most specific class that both types can be assigned to, the same way the verifier merges types.
+     * Interfaces are treated as java/lang/Object, like the verifier does.
+     *
+     * @param first internal name of a class, or descriptor of an array type.
+     * @param second internal name of a class, or descriptor of an array type.
+     * @return internal name (or array descriptor) of the common superclass.
+     */
+    String getCommonSuperclass(String first, String second) {
+        if (first.equals(second)) return first;
+
+        boolean firstArray = first.startsWith("[");
+        boolean secondArray = second.startsWith("[");
+        if (firstArray || secondArray) {
+            if (!firstArray || !secondArray) return OBJECT;
+            String firstComponent = getComponentName(first);
+            String secondComponent = getComponentName(second);
+            // arrays of different primitives only share Object.
+            if (firstComponent == null || secondComponent == null) return OBJECT;
+            String common = getCommonSuperclass(firstComponent, secondComponent);
+            return common.startsWith("[") ? "[" + common : "[L" + common + ";";
+        }
+
+        if (lookup(first).isInterface || lookup(second).isInterface) return OBJECT;
+        List<String> firstChain = getSuperclassChain(first);
+        for (String candidate : getSuperclassChain(second)) {
+            if (firstChain.contains(candidate)) return candidate;
+        }
+        return OBJECT;
+    }
+
+    /** Returns the name used for the components of an array type, or null if the components are primitives.
+     *
+     * @param arrayDescriptor descriptor of the array, e.g. [Ljava/lang/String; or [[I.
+     * @return internal class name, or array descriptor for nested arrays.
+     */
+    static String getComponentName(String arrayDescriptor) {
+        String component = arrayDescriptor.substring(1);
+        if (component.startsWith("L")) return component.substring(1, component.length() - 1);
+        if (component.startsWith("[")) return component;
+        return null;
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    // the class itself followed by all of its superclasses, ending in java/lang/Object.
+    private List<String> getSuperclassChain(String className) {
+        List<String> chain = new ArrayList<String>();
+        String current = className;
+        while (current != null && !chain.contains(current)) {
+            chain.add(current);
+            current = OBJECT.equals(current) ? null : lookup(current).superName;
+        }
+        if (!chain.contains(OBJECT)) chain.add(OBJECT);
+        return chain;
+    }
+
+    /** @throws IllegalStateException if the class cannot be found or read, guessing java/lang/Object could give
+     * frames the verifier rejects. */
+    private ClassInfo lookup(String className) {
+        ClassInfo info = cache.get(className);
+        if (info == null) {
+            info = readClassInfo(className);
+            cache.put(className, info);
+        }
+        if (info == UNKNOWN) throw new IllegalStateException("Cannot find the superclass of " + className);
+        return info;
+    }
+
+    private ClassInfo readClassInfo(String className) {
+        InputStream in = null;
+        try {
+            in = openClassFile(className);
+            if (in == null) return UNKNOWN;
+            return readHeader(new DataInputStream(new BufferedInputStream(in)));
+        } catch (IOException e) {
+            return UNKNOWN;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException ignored) {
+                    // nothing useful to do, the header has already been read.
+                }
+            }
+        }
+    }
+
+    private InputStream openClassFile(String className) throws IOException {
+        String relativePath = className + ".class";
+        for (File root : searchRoots) {
+            File classFile = new File(root, relativePath);
+            if (classFile.isFile()) return new FileInputStream(classFile);
+        }
+        return ClassLoader.getSystemResourceAsStream(relativePath);
+    }
+
+    /** Reads the class file up to the super_class entry. Every constant pool tag up to Java 17 is skipped by size,
+     * so that classes newer than the BCEL parser can still be looked at.
+     *
+     * @param in stream positioned at the start of the class file.
+     * @return the super class and interface flag of the class.
+     */
+    private static ClassInfo readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != 0xCAFEBABE) return UNKNOWN;
+        in.readUnsignedShort(); // minor version
+        in.readUnsignedShort(); // major version
+
+        int poolCount = in.readUnsignedShort();
+        String[] utf8 = new String[poolCount];
+        int[] classNameIndex = new int[poolCount];
+        for (int index = 1; index < poolCount; index++) {
+            int tag = in.readUnsignedByte();
+            switch (tag) {
+                case 1: utf8[index] = in.readUTF(); break; // Utf8
+                case 7: classNameIndex[index] = in.readUnsignedShort(); break; // Class
+                case 8: case 16: case 19: case 20: in.skipBytes(2); break; // String, MethodType, Module, Package
+                case 15: in.skipBytes(3); break; // MethodHandle
+                case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18: in.skipBytes(4); break;
+                case 5: case 6: in.skipBytes(8); index++; break; // Long and Double take two entries.
+                default: return UNKNOWN;
+            }
+        }
+
+        int accessFlags = in.readUnsignedShort();
+        in.readUnsignedShort(); // this_class
+        int superIndex = in.readUnsignedShort();
+        String superName = superIndex == 0 ? null : utf8[classNameIndex[superIndex]];
+        return new ClassInfo(superName, (accessFlags & ACC_INTERFACE) != 0);
+    }
+}
@@ -0,0 +1,592 @@
+package comp0012.main;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.*;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Rebuilds the constant pool of a class so it only holds the entries that are still referenced.
+ * Folding leaves the operands it replaced behind in the pool, so without this the optimised class can be bigger
+ * than the input. Constants loaded with LDC are placed first, most used first, so they fit the 2 byte LDC instead
+ * of the 3 byte LDC_W.
+ */
+class ConstantPoolCompactor {
+
+    // attributes stored as Unknown by BCEL that only hold a list of class indices, so they can still be remapped.
+    private static final Set<String> CLASS_LIST_ATTRIBUTES = new HashSet<String>(
+            Arrays.asList("NestHost", "NestMembers", "PermittedSubclasses"));
+
+    // an LDC inside a loop counts as this many uses per enclosing loop when deciding which constants are hot.
+    private static final int LOOP_WEIGHT = 10;
+    // deeper loops weigh the same, so the weights stay far from overflowing even summed over a whole class.
+    private static final int MAX_LOOP_DEPTH = 6;
+    // LDC only has a 1 byte index, anything above needs LDC_W.
+    private static final int MAX_LDC_INDEX = 255;
+
+    private final JavaClass original;
+    private final ConstantPool oldPool;
+
+    // collecting phase records referenced indices, rewriting phase maps old indices onto the new pool.
+    private boolean collecting;
+    private final Set<Integer> referenced = new HashSet<Integer>();
+    private final Map<Integer, Long> ldcUses = new HashMap<Integer, Long>();
+    private final Map<Integer, Integer> indexMap = new HashMap<Integer, Integer>();
+    private ConstantPool newPool;
+
+    ConstantPoolCompactor(JavaClass original) {
+        this.original = original;
+        this.oldPool = original.getConstantPool();
+    }
+
+    /** Builds a copy of the class that uses a minimal constant pool.
+     *
+     * @return the compacted class, or the original class if it has attributes whose constant pool references are
+     * not known (those can't be remapped safely), or if a branch no longer fits its offset once LDCs change size.
+     */
+    JavaClass compact() {
+        if (!isSupported(original)) return original;
+        JavaClass compacted = original.copy();
+
+        collecting = true;
+        remapClass(compacted);
+        addNestedReferences();
+
+        collecting = false;
+        newPool = buildPool();
+        try {
+            remapClass(compacted);
+        } catch (IllegalStateException e) {
+            return original;
+        }
+        return compacted;
+    }
+
+    // <=============================================== Pool Building =================================================>
+
+    // adds the entries that referenced constants point to (i.e. the Utf8 name of a Class), until nothing new is found.
+    private void addNestedReferences() {
+        Deque<Integer> worklist = new ArrayDeque<Integer>(referenced);
+        while (!worklist.isEmpty()) {
+            for (int index : nestedIndices(oldPool.getConstant(worklist.pop()))) {
+                if (referenced.add(index)) worklist.push(index);
+            }
+        }
+    }
+
+    // places LDC constants first (most used first), then every other referenced entry in its original order.
+    private ConstantPool buildPool() {
+        List<Integer> hot = new ArrayList<Integer>(ldcUses.keySet());
+        Collections.sort(hot, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer first, Integer second) {
+                int uses = ldcUses.get(second).compareTo(ldcUses.get(first));
+                return uses != 0 ? uses : first.compareTo(second);
+            }
+        });
+        List<Integer> order = new ArrayList<Integer>(hot);
+        List<Integer> rest = new ArrayList<Integer>(referenced);
+        rest.removeAll(ldcUses.keySet());
+        Collections.sort(rest);
+        order.addAll(rest);
+
+        int nextIndex = 1; // index 0 is never used.
+        for (int oldIndex : order) {
+            indexMap.put(oldIndex, nextIndex);
+            Constant constant = oldPool.getConstant(oldIndex);
+            nextIndex += (constant instanceof ConstantLong || constant instanceof ConstantDouble) ? 2 : 1;
+        }
+
+        Constant[] constants = new Constant[nextIndex];
+        for (int oldIndex : order) {
+            Constant constant = oldPool.getConstant(oldIndex).copy();
+            remapConstant(constant);
+            constants[indexMap.get(oldIndex)] = constant;
+        }
+        return new ConstantPool(constants);
+    }
+
+    private static int[] nestedIndices(Constant constant) {
+        if (constant instanceof ConstantClass) return new int[]{((ConstantClass) constant).getNameIndex()};
+        if (constant instanceof ConstantString) return new int[]{((ConstantString) constant).getStringIndex()};
+        if (constant instanceof ConstantCP) {
+            ConstantCP reference = (ConstantCP) constant;
+            return new int[]{reference.getClassIndex(), reference.getNameAndTypeIndex()};
+        }
+        if (constant instanceof ConstantNameAndType) {
+            ConstantNameAndType nameAndType = (ConstantNameAndType) constant;
+            return new int[]{nameAndType.getNameIndex(), nameAndType.getSignatureIndex()};
+        }
+        if (constant instanceof ConstantMethodHandle) return new int[]{((ConstantMethodHandle) constant).getReferenceIndex()};
+        if (constant instanceof ConstantMethodType) return new int[]{((ConstantMethodType) constant).getDescriptorIndex()};
+        if (constant instanceof ConstantInvokeDynamic) return new int[]{((ConstantInvokeDynamic) constant).getNameAndTypeIndex()};
+        return new int[0]; // Utf8, Integer, Float, Long, Double don't reference other entries.
+    }
+
+    private void remapConstant(Constant constant) {
+        if (constant instanceof ConstantClass) {
+            ((ConstantClass) constant).setNameIndex(remap(((ConstantClass) constant).getNameIndex()));
+        } else if (constant instanceof ConstantString) {
+            ((ConstantString) constant).setStringIndex(remap(((ConstantString) constant).getStringIndex()));
+        } else if (constant instanceof ConstantCP) {
+            ConstantCP reference = (ConstantCP) constant;
+            reference.setClassIndex(remap(reference.getClassIndex()));
+            reference.setNameAndTypeIndex(remap(reference.getNameAndTypeIndex()));
+        } else if (constant instanceof ConstantNameAndType) {
+            ConstantNameAndType nameAndType = (ConstantNameAndType) constant;
+            nameAndType.setNameIndex(remap(nameAndType.getNameIndex()));
+            nameAndType.setSignatureIndex(remap(nameAndType.getSignatureIndex()));
+        } else if (constant instanceof ConstantMethodHandle) {
+            ((ConstantMethodHandle) constant).setReferenceIndex(remap(((ConstantMethodHandle) constant).getReferenceIndex()));
+        } else if (constant instanceof ConstantMethodType) {
+            ((ConstantMethodType) constant).setDescriptorIndex(remap(((ConstantMethodType) constant).getDescriptorIndex()));
+        } else if (constant instanceof ConstantInvokeDynamic) {
+            ConstantInvokeDynamic invokeDynamic = (ConstantInvokeDynamic) constant;
+            invokeDynamic.setNameAndTypeIndex(remap(invokeDynamic.getNameAndTypeIndex()));
+        }
+    }
+
+    /** Collecting: records the index as referenced. Rewriting: returns the index of the same entry in the new pool.
+     *
+     * @param index index into the original constant pool (0 means "no entry" and is kept as 0).
+     * @return the index to store.
+     */
+    private int remap(int index) {
+        if (index == 0) return 0;
+        if (collecting) {
+            referenced.add(index);
+            return index;
+        }
+        Integer newIndex = indexMap.get(index);
+        if (newIndex == null) throw new IllegalStateException("Constant Pool Index Not Collected: " + index);
+        return newIndex;
+    }
+
+    // <============================================= Class Remapping =================================================>
+
+    private void remapClass(JavaClass javaClass) {
+        javaClass.setClassNameIndex(remap(javaClass.getClassNameIndex()));
+        javaClass.setSuperclassNameIndex(remap(javaClass.getSuperclassNameIndex()));
+        javaClass.setInterfaces(remapAll(javaClass.getInterfaceIndices()));
+        javaClass.setAttributes(remapAttributes(javaClass.getAttributes()));
+
+        for (FieldOrMethod member : javaClass.getFields()) remapMember(member);
+        for (FieldOrMethod member : javaClass.getMethods()) remapMember(member);
+        if (!collecting) javaClass.setConstantPool(newPool);
+    }
+
+    private void remapMember(FieldOrMethod member) {
+        member.setNameIndex(remap(member.getNameIndex()));
+        member.setSignatureIndex(remap(member.getSignatureIndex()));
+        member.setAttributes(remapAttributes(member.getAttributes()));
+        if (!collecting) member.setConstantPool(newPool);
+    }
+
+    private Attribute[] remapAttributes(Attribute[] attributes) {
+        Attribute[] remapped = new Attribute[attributes.length];
+        for (int index = 0; index < attributes.length; index++) remapped[index] = remapAttribute(attributes[index]);
+        return remapped;
+    }
+
+    /** Remaps the constant pool references held by a single attribute. Everything here was checked by isSupported.
+     *
+     * @param attribute the attribute to remap (modified in place, unless it has to be re-read from bytes).
+     * @return the remapped attribute.
+     */
+    private Attribute remapAttribute(Attribute attribute) {
+        attribute.setNameIndex(remap(attribute.getNameIndex()));
+        if (!collecting) attribute.setConstantPool(newPool);
+
+        if (attribute instanceof Code) {
+            remapCode((Code) attribute);
+        } else if (attribute instanceof SourceFile) {
+            ((SourceFile) attribute).setSourceFileIndex(remap(((SourceFile) attribute).getSourceFileIndex()));
+        } else if (attribute instanceof ConstantValue) {
+            ((ConstantValue) attribute).setConstantValueIndex(remap(((ConstantValue) attribute).getConstantValueIndex()));
+        } else if (attribute instanceof Signature) {
+            ((Signature) attribute).setSignatureIndex(remap(((Signature) attribute).getSignatureIndex()));
+        } else if (attribute instanceof ExceptionTable) {
+            ((ExceptionTable) attribute).setExceptionIndexTable(remapAll(((ExceptionTable) attribute).getExceptionIndexTable()));
+        } else if (attribute instanceof InnerClasses) {
+            for (InnerClass innerClass : ((InnerClasses) attribute).getInnerClasses()) {
+                innerClass.setInnerClassIndex(remap(innerClass.getInnerClassIndex()));
+                innerClass.setOuterClassIndex(remap(innerClass.getOuterClassIndex()));
+                innerClass.setInnerNameIndex(remap(innerClass.getInnerNameIndex()));
+            }
+        } else if (attribute instanceof EnclosingMethod) {
+            EnclosingMethod enclosingMethod = (EnclosingMethod) attribute;
+            enclosingMethod.setEnclosingClassIndex(remap(enclosingMethod.getEnclosingClassIndex()));
+            enclosingMethod.setEnclosingMethodIndex(remap(enclosingMethod.getEnclosingMethodIndex()));
+        } else if (attribute instanceof BootstrapMethods) {
+            for (BootstrapMethod bootstrapMethod : ((BootstrapMethods) attribute).getBootstrapMethods()) {
+                bootstrapMethod.setBootstrapMethodRef(remap(bootstrapMethod.getBootstrapMethodRef()));
+                bootstrapMethod.setBootstrapArguments(remapAll(bootstrapMethod.getBootstrapArguments()));
+            }
+        } else if (attribute instanceof Unknown && CLASS_LIST_ATTRIBUTES.contains(((Unknown) attribute).getName())) {
+            remapClassList((Unknown) attribute);
+        }
+        return attribute;
+    }
+
+    // NestHost is a single u2 class index, NestMembers/PermittedSubclasses are a u2 count followed by u2 class indices.
+    private void remapClassList(Unknown attribute) {
+        byte[] bytes = attribute.getBytes().clone();
+        int start = "NestHost".equals(attribute.getName()) ? 0 : 2;
+        for (int offset = start; offset + 1 < bytes.length; offset += 2) {
+            int index = remap(((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF));
+            bytes[offset] = (byte) (index >> 8);
+            bytes[offset + 1] = (byte) index;
+        }
+        if (!collecting) attribute.setBytes(bytes);
+    }
+
+    // <============================================== Code Remapping =================================================>
+
+    /** Remaps the instructions of a method. This works on the raw bytecode, since decoding every method into an
+     * InstructionList (twice) costs more than the rewrite itself. LDC/LDC_W are re-encoded to fit their new index,
+     * so the code can change size, in which case every pc stored in the exception table and the nested attributes is
+     * moved as well.
+     *
+     * @param code the Code attribute of a method.
+     */
+    private void remapCode(Code code) {
+        byte[] bytecode = code.getCode();
+        int[] pcMap;
+        if (collecting) {
+            collectCode(bytecode);
+            pcMap = new int[bytecode.length + 1]; // only read while rewriting.
+        } else {
+            pcMap = mapPcs(bytecode);
+            code.setCode(rewriteCode(bytecode, pcMap));
+        }
+
+        for (CodeException exception : code.getExceptionTable()) {
+            exception.setCatchType(remap(exception.getCatchType()));
+            if (collecting) continue;
+            exception.setStartPC(pcMap[exception.getStartPC()]);
+            exception.setEndPC(pcMap[exception.getEndPC()]);
+            exception.setHandlerPC(pcMap[exception.getHandlerPC()]);
+        }
+
+        Attribute[] attributes = code.getAttributes();
+        for (int index = 0; index < attributes.length; index++) {
+            attributes[index] = remapCodeAttribute(attributes[index], pcMap);
+        }
+        code.setAttributes(attributes); // also recalculates the length of the Code attribute.
+    }
+
+    // records the entries the instructions reference, and how hot each LDC constant is.
+    private void collectCode(byte[] bytecode) {
+        List<int[]> loops = findLoops(bytecode);
+        for (int pc = 0; pc < bytecode.length; pc += CandidateScanner.getLength(bytecode, pc)) {
+            int index = getPoolIndex(bytecode, pc);
+            if (index < 0) continue;
+            remap(index);
+            if (!isLdc(bytecode[pc] & 0xff)) continue;
+            Long uses = ldcUses.get(index);
+            long weight = (long) Math.pow(LOOP_WEIGHT, Math.min(loopDepth(pc, loops), MAX_LOOP_DEPTH));
+            ldcUses.put(index, uses == null ? weight : uses + weight);
+        }
+    }
+
+    /** Works out where every instruction ends up. Only LDC/LDC_W (through their new index) and the switches
+     * (through their padding) change size.
+     *
+     * @param bytecode the original code.
+     * @return map from old pc to new pc, with the code length mapped onto the new code length.
+     */
+    private int[] mapPcs(byte[] bytecode) {
+        int[] pcMap = new int[bytecode.length + 1];
+        int newPc = 0;
+        for (int pc = 0; pc < bytecode.length; pc += CandidateScanner.getLength(bytecode, pc)) {
+            pcMap[pc] = newPc;
+            int opcode = bytecode[pc] & 0xff;
+            if (isLdc(opcode)) newPc += remap(getPoolIndex(bytecode, pc)) <= MAX_LDC_INDEX ? 2 : 3;
+            else if (isSwitch(opcode)) newPc += CandidateScanner.getLength(bytecode, pc) - getPadding(pc) + getPadding(newPc);
+            else newPc += CandidateScanner.getLength(bytecode, pc);
+        }
+        pcMap[bytecode.length] = newPc;
+        return pcMap;
+    }
+
+    // copies the code to its new pcs, with remapped pool indices and branch offsets.
+    private byte[] rewriteCode(byte[] bytecode, int[] pcMap) {
+        byte[] newCode = new byte[pcMap[bytecode.length]];
+        for (int pc = 0; pc < bytecode.length; pc += CandidateScanner.getLength(bytecode, pc)) {
+            int opcode = bytecode[pc] & 0xff;
+            int newPc = pcMap[pc];
+            if (isLdc(opcode)) {
+                int index = remap(getPoolIndex(bytecode, pc));
+                if (index <= MAX_LDC_INDEX) {
+                    newCode[newPc] = (byte) Constants.LDC;
+                    newCode[newPc + 1] = (byte) index;
+                } else {
+                    newCode[newPc] = (byte) Constants.LDC_W;
+                    writeShort(newCode, newPc + 1, index);
+                }
+                continue;
+            }
+            if (isSwitch(opcode)) {
+                rewriteSwitch(bytecode, pc, newCode, newPc, pcMap);
+                continue;
+            }
+
+            System.arraycopy(bytecode, pc, newCode, newPc, CandidateScanner.getLength(bytecode, pc));
+            int index = getPoolIndex(bytecode, pc);
+            if (index >= 0) {
+                writeShort(newCode, newPc + 1, remap(index));
+            } else if (isShortBranch(opcode)) {
+                int offset = pcMap[pc + (short) CandidateScanner.readShort(bytecode, pc + 1)] - newPc;
+                if (offset != (short) offset) throw new IllegalStateException("Branch Offset Too Large: " + offset);
+                writeShort(newCode, newPc + 1, offset);
+            } else if (isLongBranch(opcode)) {
+                writeInt(newCode, newPc + 1, pcMap[pc + CandidateScanner.readInt(bytecode, pc + 1)] - newPc);
+            }
+        }
+        return newCode;
+    }
+
+    // TABLESWITCH: default, low, high, then an offset per case. LOOKUPSWITCH: default, npairs, then (match, offset) pairs.
+    private static void rewriteSwitch(byte[] bytecode, int pc, byte[] newCode, int newPc, int[] pcMap) {
+        int operands = pc + 1 + getPadding(pc);
+        int newOperands = newPc + 1 + getPadding(newPc);
+        newCode[newPc] = bytecode[pc]; // the padding bytes are already zero.
+
+        List<Integer> offsets = new ArrayList<Integer>();
+        offsets.add(0);
+        if ((bytecode[pc] & 0xff) == Constants.TABLESWITCH) {
+            System.arraycopy(bytecode, operands + 4, newCode, newOperands + 4, 8);
+            int cases = CandidateScanner.readInt(bytecode, operands + 8) - CandidateScanner.readInt(bytecode, operands + 4) + 1;
+            for (int entry = 0; entry < cases; entry++) offsets.add(12 + 4 * entry);
+        } else {
+            int pairs = CandidateScanner.readInt(bytecode, operands + 4);
+            System.arraycopy(bytecode, operands + 4, newCode, newOperands + 4, 4 + 8 * pairs);
+            for (int entry = 0; entry < pairs; entry++) offsets.add(12 + 8 * entry);
+        }
+        for (int offset : offsets) {
+            int target = pcMap[pc + CandidateScanner.readInt(bytecode, operands + offset)];
+            writeInt(newCode, newOperands + offset, target - newPc);
+        }
+    }
+
+    private Attribute remapCodeAttribute(Attribute attribute, int[] pcMap) {
+        if (attribute instanceof StackMapTable) return remapStackMapTable((StackMapTable) attribute, pcMap);
+
+        attribute.setNameIndex(remap(attribute.getNameIndex()));
+        if (!collecting) attribute.setConstantPool(newPool);
+
+        if (attribute instanceof LineNumberTable) {
+            if (collecting) return attribute;
+            for (LineNumber lineNumber : ((LineNumberTable) attribute).getLineNumberTable()) {
+                lineNumber.setStartPC(pcMap[lineNumber.getStartPC()]);
+            }
+        } else if (attribute instanceof LocalVariableTable) {
+            remapLocalVariables(((LocalVariableTable) attribute).getLocalVariableTable(), pcMap);
+        } else if (attribute instanceof LocalVariableTypeTable) {
+            remapLocalVariables(((LocalVariableTypeTable) attribute).getLocalVariableTypeTable(), pcMap);
+        }
+        return attribute;
+    }
+
+    private void remapLocalVariables(LocalVariable[] localVariables, int[] pcMap) {
+        for (LocalVariable localVariable : localVariables) {
+            localVariable.setNameIndex(remap(localVariable.getNameIndex()));
+            localVariable.setSignatureIndex(remap(localVariable.getSignatureIndex()));
+            if (collecting) continue;
+
+            int end = pcMap[localVariable.getStartPC() + localVariable.getLength()];
+            localVariable.setStartPC(pcMap[localVariable.getStartPC()]);
+            localVariable.setLength(end - localVariable.getStartPC());
+            localVariable.setConstantPool(newPool);
+        }
+    }
+
+    /** The frame type of SAME/SAME_LOCALS_1_STACK_ITEM frames holds the offset delta, and BCEL does not expose it,
+     * so the table is rewritten at the byte level and then read back as a new attribute.
+     *
+     * @param stackMapTable the original StackMapTable attribute.
+     * @param pcMap map from old pc to new pc.
+     * @return the remapped StackMapTable.
+     */
+    private Attribute remapStackMapTable(StackMapTable stackMapTable, int[] pcMap) {
+        try {
+            ByteArrayOutputStream original = new ByteArrayOutputStream();
+            stackMapTable.dump(new DataOutputStream(original));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(original.toByteArray()));
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(body);
+            int nameIndex = remap(in.readUnsignedShort());
+            in.readInt(); // attribute length, recalculated below.
+
+            int entries = in.readUnsignedShort();
+            out.writeShort(entries);
+            int oldOffset = -1;
+            int newOffset = -1;
+            for (int entry = 0; entry < entries; entry++) {
+                int frameType = in.readUnsignedByte();
+                int delta;
+                if (frameType <= Constants.SAME_LOCALS_1_STACK_ITEM_FRAME_MAX) delta = frameType & Constants.SAME_FRAME_MAX;
+                else delta = in.readUnsignedShort();
+
+                oldOffset += delta + 1;
+                int newDelta = pcMap[oldOffset] - newOffset - 1;
+                newOffset = pcMap[oldOffset];
+                if (collecting) newDelta = delta;
+
+                int newFrameType;
+                int verificationTypes;
+                if (frameType <= Constants.SAME_FRAME_MAX) {
+                    newFrameType = newDelta <= Constants.SAME_FRAME_MAX ? newDelta : Constants.SAME_FRAME_EXTENDED;
+                    verificationTypes = 0;
+                } else if (frameType <= Constants.SAME_LOCALS_1_STACK_ITEM_FRAME_MAX ||
+                        frameType == Constants.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED) {
+                    newFrameType = newDelta <= Constants.SAME_FRAME_MAX ?
+                            Constants.SAME_LOCALS_1_STACK_ITEM_FRAME + newDelta : Constants.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED;
+                    verificationTypes = 1;
+                } else {
+                    newFrameType = frameType;
+                    // CHOP and SAME_EXTENDED have no types, APPEND has (type - 251), FULL_FRAME is read separately.
+                    verificationTypes = frameType == Constants.FULL_FRAME ? -1 : Math.max(frameType - Constants.SAME_FRAME_EXTENDED, 0);
+                }
+                out.writeByte(newFrameType);
+                if (newFrameType >= Constants.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED) out.writeShort(newDelta);
+
+                if (verificationTypes == -1) {
+                    // FULL_FRAME: u2 locals, locals, u2 stack items, stack items.
+                    int locals = in.readUnsignedShort();
+                    out.writeShort(locals);
+                    copyVerificationTypes(in, out, locals, pcMap);
+                    int stackItems = in.readUnsignedShort();
+                    out.writeShort(stackItems);
+                    copyVerificationTypes(in, out, stackItems, pcMap);
+                } else {
+                    copyVerificationTypes(in, out, verificationTypes, pcMap);
+                }
+            }
+            if (collecting) return stackMapTable;
+
+            ByteArrayOutputStream attribute = new ByteArrayOutputStream();
+            DataOutputStream attributeOut = new DataOutputStream(attribute);
+            attributeOut.writeShort(nameIndex);
+            attributeOut.writeInt(body.size());
+            attributeOut.write(body.toByteArray());
+            return Attribute.readAttribute(new DataInputStream(new ByteArrayInputStream(attribute.toByteArray())), newPool);
+        } catch (IOException e) {
+            throw new IllegalStateException("Malformed StackMapTable", e);
+        }
+    }
+
+    // copies verification types, remapping Object class indices and the pc of NEW for Uninitialized.
+    private void copyVerificationTypes(DataInputStream in, DataOutputStream out, int count, int[] pcMap) throws IOException {
+        for (int type = 0; type < count; type++) {
+            int tag = in.readUnsignedByte();
+            out.writeByte(tag);
+            if (tag == Constants.ITEM_Object) {
+                out.writeShort(remap(in.readUnsignedShort()));
+            } else if (tag == Constants.ITEM_NewObject) {
+                int pc = in.readUnsignedShort();
+                out.writeShort(collecting ? pc : pcMap[pc]);
+            }
+        }
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    // the pc ranges (start, end) of the loops of a method, one per backward branch.
+    private static List<int[]> findLoops(byte[] bytecode) {
+        List<int[]> loops = new ArrayList<int[]>();
+        for (int pc = 0; pc < bytecode.length; pc += CandidateScanner.getLength(bytecode, pc)) {
+            int opcode = bytecode[pc] & 0xff;
+            int loopStart;
+            if (isShortBranch(opcode)) loopStart = pc + (short) CandidateScanner.readShort(bytecode, pc + 1);
+            else if (isLongBranch(opcode)) loopStart = pc + CandidateScanner.readInt(bytecode, pc + 1);
+            else continue;
+            if (loopStart <= pc) loops.add(new int[] {loopStart, pc});
+        }
+        return loops;
+    }
+
+    // counts the loops whose body contains the given pc.
+    private static int loopDepth(int pc, List<int[]> loops) {
+        int depth = 0;
+        for (int[] loop : loops) {
+            if (pc >= loop[0] && pc <= loop[1]) depth++;
+        }
+        return depth;
+    }
+
+    // the constant pool index held by the instruction at pc, or -1 if it has none. Only LDC has a 1 byte index.
+    private static int getPoolIndex(byte[] bytecode, int pc) {
+        int opcode = bytecode[pc] & 0xff;
+        if (opcode == Constants.LDC) return bytecode[pc + 1] & 0xff;
+        if (opcode == Constants.LDC_W || opcode == Constants.LDC2_W || (opcode >= Constants.GETSTATIC && opcode <= Constants.NEW)
+                || opcode == Constants.ANEWARRAY || opcode == Constants.CHECKCAST || opcode == Constants.INSTANCEOF
+                || opcode == Constants.MULTIANEWARRAY) {
+            return CandidateScanner.readShort(bytecode, pc + 1);
+        }
+        return -1;
+    }
+
+    private static boolean isLdc(int opcode) {
+        return opcode == Constants.LDC || opcode == Constants.LDC_W;
+    }
+
+    private static boolean isSwitch(int opcode) {
+        return opcode == Constants.TABLESWITCH || opcode == Constants.LOOKUPSWITCH;
+    }
+
+    // IFEQ to JSR, IFNULL and IFNONNULL, which all hold a 2 byte offset.
+    private static boolean isShortBranch(int opcode) {
+        return (opcode >= Constants.IFEQ && opcode <= Constants.JSR) || opcode == Constants.IFNULL || opcode == Constants.IFNONNULL;
+    }
+
+    private static boolean isLongBranch(int opcode) {
+        return opcode == Constants.GOTO_W || opcode == Constants.JSR_W;
+    }
+
+    // the switch operands are aligned to 4 bytes from the start of the code.
+    private static int getPadding(int pc) {
+        return ((pc + 4) & ~3) - pc - 1;
+    }
+
+    private static void writeShort(byte[] bytecode, int offset, int value) {
+        bytecode[offset] = (byte) (value >> 8);
+        bytecode[offset + 1] = (byte) value;
+    }
+
+    private static void writeInt(byte[] bytecode, int offset, int value) {
+        writeShort(bytecode, offset, value >> 16);
+        writeShort(bytecode, offset + 2, value);
+    }
+
+    private int[] remapAll(int[] indices) {
+        int[] remapped = new int[indices.length];
+        for (int index = 0; index < indices.length; index++) remapped[index] = remap(indices[index]);
+        return remapped;
+    }
+
+    // checks that every attribute in the class is one whose constant pool references are known.
+    private static boolean isSupported(JavaClass javaClass) {
+        List<Attribute> attributes = new ArrayList<Attribute>(Arrays.asList(javaClass.getAttributes()));
+        for (FieldOrMethod member : javaClass.getFields()) attributes.addAll(Arrays.asList(member.getAttributes()));
+        for (FieldOrMethod member : javaClass.getMethods()) attributes.addAll(Arrays.asList(member.getAttributes()));
+        for (int index = 0; index < attributes.size(); index++) {
+            Attribute attribute = attributes.get(index);
+            if (attribute instanceof Code) attributes.addAll(Arrays.asList(((Code) attribute).getAttributes()));
+            if (!isSupported(attribute)) return false;
+        }
+        return true;
+    }
+
+    private static boolean isSupported(Attribute attribute) {
+        if (attribute instanceof Unknown) return CLASS_LIST_ATTRIBUTES.contains(((Unknown) attribute).getName());
+        return attribute instanceof Code || attribute instanceof LineNumberTable || attribute instanceof LocalVariableTable ||
+                attribute instanceof LocalVariableTypeTable || attribute instanceof StackMapTable ||
+                attribute instanceof SourceFile || attribute instanceof ConstantValue || attribute instanceof Signature ||
+                attribute instanceof ExceptionTable || attribute instanceof InnerClasses ||
+                attribute instanceof EnclosingMethod || attribute instanceof BootstrapMethods ||
+                attribute instanceof Synthetic || attribute instanceof org.apache.bcel.classfile.Deprecated;
+    }
+}
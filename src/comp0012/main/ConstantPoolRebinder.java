@@ -0,0 +1,45 @@
+package comp0012.main;
+
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.*;
+
+/**
+ * Moves an optimised method from the constant pool it was written against onto another pool, by adding the constants
+ * its instructions use to the target pool. Used to merge methods optimised by parallel workers
+ * (ParallelMethodOptimizer) and to reuse methods optimised in another class (MethodMemo).
+ */
+class ConstantPoolRebinder {
+
+    private ConstantPoolRebinder() {
+    }
+
+    /** Copies a method onto another constant pool.
+     *
+     * @param method the method, referencing the source pool.
+     * @param className name of the class the copy belongs to.
+     * @param sourcePool the pool the method references.
+     * @param targetPool the pool the copy references, the constants it needs are added to it.
+     * @param firstRebound smallest index that has to be looked up, lower ones are the same entry in both pools
+     *                     (i.e. both pools started as copies of the same class). 0 if the pools are unrelated.
+     * @return the copy, with the same code, name, signature and access flags.
+     */
+    static Method rebind(Method method, String className, ConstantPoolGen sourcePool, ConstantPoolGen targetPool, int firstRebound) {
+        MethodGen methodGen = new MethodGen(method, className, sourcePool);
+        methodGen.removeLocalVariables(); // made up "this" entry, optimised methods are written without any.
+        InstructionList instructionList = methodGen.getInstructionList();
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            if (!(handle.getInstruction() instanceof CPInstruction)) continue;
+            CPInstruction instruction = (CPInstruction) handle.getInstruction();
+            if (instruction.getIndex() >= firstRebound) {
+                instruction.setIndex(targetPool.addConstant(sourcePool.getConstant(instruction.getIndex()), sourcePool));
+            }
+        }
+        methodGen.setConstantPool(targetPool);
+        instructionList.setPositions(true); // an LDC can become an LDC_W if its constant moved past index 255.
+
+        Method rebound = methodGen.getMethod();
+        // BCEL dumps INVOKEDYNAMIC without its two zero bytes, so the code is encoded again with the full instruction.
+        rebound.getCode().setCode(InstructionEncoder.getByteCode(instructionList));
+        return rebound;
+    }
+}
@@ -0,0 +1,186 @@
+package comp0012.main;
+
+import org.apache.bcel.generic.*;
+
+import java.util.*;
+
+/**
+ * Rewrites chains of equality tests on the same int local, i.e. if (x == 1) .. else if (x == 2) .. else ..,
+ * into a single TABLESWITCH (dense keys) or LOOKUPSWITCH (sparse keys).
+ * The compare instructions of the old chain are left behind unreachable for the BranchSimplifier to delete.
+ */
+class IfChainConverter {
+
+    // below this, a couple of compares is as cheap as a switch.
+    private static final int MINIMUM_CHAIN_LENGTH = 3;
+
+    private final InstructionList instructionList;
+    private final ConstantPoolGen cpgen;
+
+    IfChainConverter(MethodGen methodGen) {
+        this.instructionList = methodGen.getInstructionList();
+        this.cpgen = methodGen.getConstantPool();
+    }
+
+    // one "LOAD x, LOAD K, IF_ICMPNE next" link of the chain. The fall-through of the IF is the case body.
+    private static class Link {
+        final InstructionHandle start;
+        final InstructionHandle branch;
+        final int local;
+        final int key;
+
+        Link(InstructionHandle start, InstructionHandle branch, int local, int key) {
+            this.start = start;
+            this.branch = branch;
+            this.local = local;
+            this.key = key;
+        }
+    }
+
+    /** Converts every long enough if-chain in the method into a switch.
+     *
+     * @return the number of chains that were converted.
+     */
+    int convert() {
+        int converted = 0;
+        Set<InstructionHandle> consumed = new HashSet<InstructionHandle>();
+        instructionList.setPositions();
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            if (consumed.contains(handle)) continue;
+
+            List<Link> chain = collectChain(handle);
+            if (chain.size() < MINIMUM_CHAIN_LENGTH) continue;
+            for (Link link : chain) consumed.add(link.start);
+            rewriteChain(chain);
+            converted++;
+        }
+        return converted;
+    }
+
+    // follows the "not equal" targets from the given handle for as long as they test the same local.
+    private List<Link> collectChain(InstructionHandle start) {
+        List<Link> chain = new ArrayList<Link>();
+        Link link = parseLink(start);
+        if (link == null || hasInnerTargeters(link)) return chain;
+        chain.add(link);
+
+        while (true) {
+            InstructionHandle nextStart = ((BranchInstruction) link.branch.getInstruction()).getTarget();
+            Link next = parseLink(nextStart);
+            if (next == null || next.local != link.local || nextStart.getPosition() <= link.branch.getPosition()) break;
+            if (!onlyReachedFrom(nextStart, link.branch) || hasInnerTargeters(next)) break;
+            chain.add(next);
+            link = next;
+        }
+        return chain;
+    }
+
+    /** Matches ILOAD x, CONST K, IF_ICMPNE / CONST K, ILOAD x, IF_ICMPNE / ILOAD x, IFNE (where K is 0).
+     *
+     * @param start first instruction of the candidate link.
+     * @return the link, or null if the instructions do not test a local for equality with a constant.
+     */
+    private Link parseLink(InstructionHandle start) {
+        InstructionHandle second = start.getNext();
+        if (second == null) return null;
+
+        if (start.getInstruction() instanceof ILOAD && second.getInstruction() instanceof IFNE) {
+            return new Link(start, second, ((ILOAD) start.getInstruction()).getIndex(), 0);
+        }
+
+        InstructionHandle third = second.getNext();
+        if (third == null || !(third.getInstruction() instanceof IF_ICMPNE)) return null;
+
+        if (start.getInstruction() instanceof ILOAD && getIntegerConstant(second.getInstruction()) != null) {
+            return new Link(start, third, ((ILOAD) start.getInstruction()).getIndex(), getIntegerConstant(second.getInstruction()));
+        }
+        if (second.getInstruction() instanceof ILOAD && getIntegerConstant(start.getInstruction()) != null) {
+            return new Link(start, third, ((ILOAD) second.getInstruction()).getIndex(), getIntegerConstant(start.getInstruction()));
+        }
+        return null;
+    }
+
+    // replaces the first link of the chain with LOAD x, SWITCH and points every key at its case body.
+    private void rewriteChain(List<Link> chain) {
+        TreeMap<Integer, InstructionHandle> cases = new TreeMap<Integer, InstructionHandle>();
+        for (Link link : chain) {
+            // a repeated key can never be matched by the later test, same as in the original chain.
+            if (!cases.containsKey(link.key)) cases.put(link.key, link.branch.getNext());
+        }
+        Link last = chain.get(chain.size() - 1);
+        InstructionHandle defaultTarget = ((BranchInstruction) last.branch.getInstruction()).getTarget();
+
+        Link first = chain.get(0);
+        first.start.setInstruction(new ILOAD(first.local));
+        try {
+            if (first.start.getNext() != first.branch) instructionList.delete(first.start.getNext(), first.branch.getPrev());
+        } catch (TargetLostException ignored) {
+            // cannot happen, hasInnerTargeters made sure nothing jumps into the middle of a link.
+        }
+        first.branch.setInstruction(createSwitch(cases, defaultTarget));
+    }
+
+    /** Chooses between TABLESWITCH and LOOKUPSWITCH using the same space/time cost estimate as javac.
+     *
+     * @param cases sorted map from key to the case body.
+     * @param defaultTarget where to jump when no key matches.
+     * @return the switch instruction.
+     */
+    private static Select createSwitch(TreeMap<Integer, InstructionHandle> cases, InstructionHandle defaultTarget) {
+        int low = cases.firstKey();
+        int high = cases.lastKey();
+        long range = (long) high - low + 1;
+
+        long tableCost = (4 + range) + 3 * 3;
+        long lookupCost = (3 + 2L * cases.size()) + 3L * cases.size();
+        if (tableCost <= lookupCost) {
+            int[] matches = new int[(int) range];
+            InstructionHandle[] targets = new InstructionHandle[(int) range];
+            for (int index = 0; index < range; index++) {
+                matches[index] = low + index;
+                InstructionHandle target = cases.get(low + index);
+                targets[index] = target != null ? target : defaultTarget; // gaps in the table go to the default.
+            }
+            return new TABLESWITCH(matches, targets, defaultTarget);
+        }
+
+        int[] matches = new int[cases.size()];
+        InstructionHandle[] targets = new InstructionHandle[cases.size()];
+        int index = 0;
+        for (Map.Entry<Integer, InstructionHandle> entry : cases.entrySet()) {
+            matches[index] = entry.getKey();
+            targets[index++] = entry.getValue();
+        }
+        return new LOOKUPSWITCH(matches, targets, defaultTarget);
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    // checks that the link start is only reached by the IF of the previous link, and not by falling through.
+    private static boolean onlyReachedFrom(InstructionHandle start, InstructionHandle branch) {
+        InstructionTargeter[] targeters = start.getTargeters();
+        if (targeters.length != 1 || targeters[0] != branch.getInstruction()) return false;
+
+        Instruction previous = start.getPrev() != null ? start.getPrev().getInstruction() : null;
+        return previous instanceof GotoInstruction || previous instanceof ReturnInstruction || previous instanceof ATHROW;
+    }
+
+    // checks if anything jumps into the middle of a link, which would stop it from being rewritten.
+    private static boolean hasInnerTargeters(Link link) {
+        for (InstructionHandle handle = link.start.getNext(); handle != link.branch.getNext(); handle = handle.getNext()) {
+            if (handle.hasTargeters()) return true;
+        }
+        return false;
+    }
+
+    // returns the int loaded by the instruction, or null if it does not load an int constant.
+    private Integer getIntegerConstant(Instruction instruction) {
+        if (instruction instanceof ICONST || instruction instanceof BIPUSH || instruction instanceof SIPUSH) {
+            return ((ConstantPushInstruction) instruction).getValue().intValue();
+        } else if (instruction instanceof LDC) {
+            Object value = ((LDC) instruction).getValue(cpgen);
+            if (value instanceof Integer) return (Integer) value;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,40 @@
+package comp0012.main;
+
+import org.apache.bcel.generic.INVOKEDYNAMIC;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Replacement for InstructionList.getByteCode(). The bundled BCEL snapshot dumps INVOKEDYNAMIC without its two
+ * trailing zero bytes, which shifts every following instruction, so those are written here by hand.
+ */
+final class InstructionEncoder {
+
+    private InstructionEncoder() { }
+
+    /** Encodes the instruction list into the bytes of a Code attribute.
+     *
+     * @param instructionList the instructions, positions are recalculated before encoding.
+     * @return the encoded bytecode.
+     */
+    static byte[] getByteCode(InstructionList instructionList) {
+        instructionList.setPositions();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            for (InstructionHandle handle = instructionList.getStart(); handle != null; handle = handle.getNext()) {
+                Instruction instruction = handle.getInstruction();
+                instruction.dump(out);
+                if (instruction instanceof INVOKEDYNAMIC) out.writeShort(0); // the reserved bytes BCEL leaves out.
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // can't happen when writing to memory.
+        }
+        return bytes.toByteArray();
+    }
+}
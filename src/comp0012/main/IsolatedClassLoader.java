@@ -0,0 +1,23 @@
+package comp0012.main;
+
+import org.apache.bcel.generic.ClassGen;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Class loader with a private copy of the optimiser and BCEL.
+ * BCEL recycles deleted instruction handles through unsynchronised static free lists, so two threads can never
+ * share one copy of it. Threads that optimise at the same time (OptimiserDaemon workers, ParallelMethodOptimizer
+ * workers) each load the optimiser through a loader of their own, and keep it for as long as the thread lives.
+ */
+class IsolatedClassLoader extends URLClassLoader {
+
+    IsolatedClassLoader() {
+        // no parent apart from the JDK, otherwise the shared copies of the classes would be used.
+        super(new URL[] {
+                IsolatedClassLoader.class.getProtectionDomain().getCodeSource().getLocation(),
+                ClassGen.class.getProtectionDomain().getCodeSource().getLocation()
+        }, null);
+    }
+}
@@ -0,0 +1,524 @@
+package comp0012.main;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.generic.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Common subexpression elimination pass that runs over a single method, by local value numbering:
+ * every basic block is walked with a symbolic operand stack, and each value gets a number that only depends on the
+ * operation and the numbers of its operands. A pure computation (arithmetic, conversion, comparison, array length)
+ * or a memory load (field or array element) that yields a number already computed in the same block is replaced by
+ * a load of a local that holds it: the local the value was stored to, or a new temporary local filled in right after
+ * the first computation. A replacement is only made if the code gets shorter: the instructions it removes must take
+ * more bytes than the load, plus the DUP and store of the temporary for the first replacement that needs one.
+ *
+ * Memory loads are only numbered while nothing could have changed them: a store to the same field or to any array,
+ * a call or a monitor forgets them. Only fields declared, non-volatile, in the class itself are numbered; any other
+ * field access could be volatile, so it forgets every memory load too.
+ */
+class LocalValueNumbering {
+
+    private static final int UNKNOWN = -1; // number of a value the pass knows nothing about.
+
+    /**
+     * A value on the symbolic stack. Start and end are the instructions that push it, if they are a contiguous run
+     * that only pushes this value (so they can be swapped for a single load), null otherwise.
+     */
+    private static class Value {
+        final int number;
+        final Type type;
+        final InstructionHandle start;
+        final InstructionHandle end;
+
+        Value(int number, Type type, InstructionHandle start, InstructionHandle end) {
+            this.number = number;
+            this.type = type;
+            this.start = start;
+            this.end = end;
+        }
+
+        int getSize() {
+            return type != null ? type.getSize() : 1;
+        }
+    }
+
+    // a recomputation that is replaced by a load of a local, or of the temporary of its number if local is -1.
+    private static class Reuse {
+        final Value value;
+        final int local;
+
+        Reuse(Value value, int local) {
+            this.value = value;
+            this.local = local;
+        }
+    }
+
+    private final MethodGen methodGen;
+    private final InstructionList instructionList;
+    private final ConstantPoolGen cpgen;
+    private final String className;
+    private final Field[] fields;
+
+    // state of the current block.
+    private final List<Value> stack = new ArrayList<Value>();
+    private final Map<Integer, Integer> locals = new HashMap<Integer, Integer>(); // local index -> number it holds.
+    private final Set<Integer> wideLocals = new HashSet<Integer>(); // locals that hold a long/double.
+    private final Map<String, Integer> pureValues = new HashMap<String, Integer>();
+    private final Map<String, Integer> memoryValues = new HashMap<String, Integer>();
+
+    // over the whole method, numbers are never reused between blocks.
+    private final Map<Integer, InstructionHandle> firstComputations = new HashMap<Integer, InstructionHandle>();
+    private final List<Reuse> reuses = new ArrayList<Reuse>();
+    private int nextNumber = 0;
+
+    /**
+     * @param methodGen the method to optimise.
+     * @param className name of the class the method belongs to.
+     * @param fields fields declared by that class, the only ones whose loads can be numbered.
+     */
+    LocalValueNumbering(MethodGen methodGen, String className, Field[] fields) {
+        this.methodGen = methodGen;
+        this.instructionList = methodGen.getInstructionList();
+        this.cpgen = methodGen.getConstantPool();
+        this.className = className;
+        this.fields = fields;
+    }
+
+    /** Numbers every block and replaces the redundant computations.
+     *
+     * @return the number of computations that were replaced by a load.
+     */
+    int eliminate() {
+        methodGen.setMaxLocals(); // the first temporary, see getReuseCost.
+        Set<InstructionHandle> leaders = findBlockLeaders();
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            if (leaders.contains(handle)) startBlock();
+            simulate(handle);
+        }
+        return rewrite();
+    }
+
+    /** Checks if loads of a field can be numbered, i.e. it is a non-volatile field declared by the class itself.
+     *
+     * @param className the class being optimised.
+     * @param fields the fields it declares.
+     * @param fieldClass class named by the field reference.
+     * @param name name of the field.
+     * @param signature type signature of the field.
+     * @return true if two loads of the field with no store or call between them always read the same value.
+     */
+    static boolean isStableField(String className, Field[] fields, String fieldClass, String name, String signature) {
+        if (!className.equals(fieldClass)) return false; // could be volatile, or even declared in a superclass.
+        for (Field field : fields) {
+            if (field.getName().equals(name) && field.getSignature().equals(signature)) return !field.isVolatile();
+        }
+        return false;
+    }
+
+    // <=============================================== Basic Blocks =================================================>
+
+    // the first instruction of every block: jump and handler targets, protected range boundaries and whatever
+    // follows a branch, return or throw.
+    private Set<InstructionHandle> findBlockLeaders() {
+        Set<InstructionHandle> leaders = new HashSet<InstructionHandle>();
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            Instruction instruction = handle.getInstruction();
+            if (handle.hasTargeters()) leaders.add(handle);
+            boolean endsBlock = instruction instanceof BranchInstruction || instruction instanceof ReturnInstruction
+                    || instruction instanceof ATHROW || instruction instanceof RET;
+            if (endsBlock && handle.getNext() != null) leaders.add(handle.getNext());
+        }
+        for (CodeExceptionGen handler : methodGen.getExceptionHandlers()) {
+            if (handler.getEndPC().getNext() != null) leaders.add(handler.getEndPC().getNext());
+        }
+        return leaders;
+    }
+
+    private void startBlock() {
+        stack.clear(); // anything left by the previous blocks is unknown.
+        locals.clear();
+        wideLocals.clear();
+        pureValues.clear();
+        memoryValues.clear();
+    }
+
+    // <================================================ Numbering ===================================================>
+
+    private void simulate(InstructionHandle handle) {
+        Instruction instruction = handle.getInstruction();
+        int opcode = instruction.getOpcode();
+
+        if (isConstant(instruction)) {
+            push(getNumber(pureValues, getConstantKey(instruction)), ((TypedInstruction) instruction).getType(cpgen), handle, handle);
+        } else if (instruction instanceof LoadInstruction) {
+            LoadInstruction load = (LoadInstruction) instruction;
+            Integer number = locals.get(load.getIndex());
+            if (number == null) {
+                number = nextNumber++;
+                setLocal(load.getIndex(), load.getType(cpgen).getSize(), number);
+            }
+            push(number, load.getType(cpgen), handle, handle);
+        } else if (instruction instanceof StoreInstruction) {
+            StoreInstruction store = (StoreInstruction) instruction;
+            Value value = pop(store.getType(cpgen).getSize());
+            setLocal(store.getIndex(), store.getType(cpgen).getSize(), value.number);
+        } else if (instruction instanceof IINC) {
+            setLocal(((IINC) instruction).getIndex(), 1, UNKNOWN);
+        } else if (opcode == Constants.DUP) {
+            Value value = pop(1);
+            stack.add(value);
+            stack.add(new Value(value.number, value.type, null, null)); // same number, but not a run of its own.
+        } else if (isPureComputation(instruction)) {
+            Type type = getResultType(instruction);
+            Value[] operands = popOperands(instruction);
+            String key = getPureKey(opcode, operands);
+            computed(handle, type, operands, key == null ? nextNumber++ : getNumber(pureValues, key));
+        } else if (opcode == Constants.GETFIELD || opcode == Constants.GETSTATIC) {
+            loadField(handle, (FieldInstruction) instruction);
+        } else if (instruction instanceof ArrayInstruction && instruction instanceof StackProducer) {
+            Value[] operands = {pop(1), pop(1)}; // array reference, then index.
+            swap(operands);
+            String key = operands[0].number == UNKNOWN || operands[1].number == UNKNOWN ? null
+                    : "array:" + opcode + ":" + operands[0].number + ":" + operands[1].number;
+            Type type = ((ArrayInstruction) instruction).getType(cpgen);
+            computed(handle, type, operands, key == null ? nextNumber++ : getNumber(memoryValues, key));
+        } else {
+            applySideEffects(instruction);
+            simulateUnknown(instruction);
+        }
+    }
+
+    private void loadField(InstructionHandle handle, FieldInstruction instruction) {
+        Value[] operands = instruction.getOpcode() == Constants.GETFIELD ? new Value[] {pop(1)} : new Value[0];
+        Type type = instruction.getFieldType(cpgen);
+        if (!isStable(instruction)) {
+            memoryValues.clear(); // a volatile load: nothing loaded before it may be used after it.
+            push(UNKNOWN, type, null, null);
+            return;
+        }
+        String key = getFieldKey(instruction);
+        if (operands.length > 0) key = operands[0].number == UNKNOWN ? null : key + operands[0].number;
+        computed(handle, type, operands, key == null ? nextNumber++ : getNumber(memoryValues, key));
+    }
+
+    // pushes the result of a computation, and records it as a reuse if the block has computed its number before.
+    private void computed(InstructionHandle handle, Type type, Value[] operands, int number) {
+        InstructionHandle start = getRunStart(handle, operands);
+        Value value = new Value(number, type, start, start != null ? handle : null);
+        stack.add(value);
+
+        if (!firstComputations.containsKey(number)) {
+            firstComputations.put(number, handle);
+        } else if (start != null) {
+            Reuse reuse = new Reuse(value, getLocalHolding(number));
+            if (getRunLength(value) <= getReuseCost(reuse)) return; // left as it is, with any reuses inside it.
+            // a reuse of an enclosing expression replaces the reuses inside it.
+            while (!reuses.isEmpty() && reuses.get(reuses.size() - 1).value.start.getPosition() >= start.getPosition()) {
+                reuses.remove(reuses.size() - 1);
+            }
+            reuses.add(reuse);
+        }
+    }
+
+    // bytes of the instructions a reuse would remove.
+    private static int getRunLength(Value value) {
+        return value.end.getPosition() + value.end.getInstruction().getLength() - value.start.getPosition();
+    }
+
+    /** Bytes a reuse adds: its load, and the DUP and store after the first computation if it is the first reuse of
+     * a temporary. Temporaries come after every local of the method, the other reuses planned so far are counted
+     * as if each had a temporary of its own.
+     *
+     * @return the bytes added, in the worst case.
+     */
+    private int getReuseCost(Reuse reuse) {
+        int local = reuse.local;
+        int setup = 0;
+        if (local < 0) {
+            local = methodGen.getMaxLocals() + 2 * reuses.size();
+            if (!hasTemporary(reuse.value.number)) setup = 1 + getLocalInstructionLength(local); // DUP/DUP2 and the store.
+        }
+        return getLocalInstructionLength(local) + setup;
+    }
+
+    // true if a reuse planned so far already stores the number in a temporary.
+    private boolean hasTemporary(int number) {
+        for (Reuse planned : reuses) {
+            if (planned.local < 0 && planned.value.number == number) return true;
+        }
+        return false;
+    }
+
+    // xLOAD_n/xSTORE_n for the first four locals, then one index byte, then WIDE with two.
+    private static int getLocalInstructionLength(int local) {
+        if (local <= 3) return 1;
+        return local <= 255 ? 2 : 4;
+    }
+
+    // forgets the memory loads an instruction may change.
+    private void applySideEffects(Instruction instruction) {
+        int opcode = instruction.getOpcode();
+        if (opcode == Constants.PUTFIELD || opcode == Constants.PUTSTATIC) {
+            FieldInstruction field = (FieldInstruction) instruction;
+            if (!isStable(field)) {
+                memoryValues.clear();
+                return;
+            }
+            String prefix = getFieldKey(field);
+            for (Iterator<String> keys = memoryValues.keySet().iterator(); keys.hasNext(); ) {
+                if (keys.next().startsWith(prefix)) keys.remove();
+            }
+        } else if (instruction instanceof ArrayInstruction) {
+            // any array store, the arrays may be the same one or aliases of it.
+            for (Iterator<String> keys = memoryValues.keySet().iterator(); keys.hasNext(); ) {
+                if (keys.next().startsWith("array:")) keys.remove();
+            }
+        } else if (instruction instanceof InvokeInstruction || opcode == Constants.MONITORENTER
+                || opcode == Constants.MONITOREXIT) {
+            memoryValues.clear();
+        }
+    }
+
+    // an instruction the pass does not number: pops its operands and pushes unknown values.
+    private void simulateUnknown(Instruction instruction) {
+        int consumed = instruction.consumeStack(cpgen);
+        while (consumed > 0) consumed -= pop(1).getSize();
+        for (int produced = instruction.produceStack(cpgen); produced > 0; produced--) {
+            stack.add(new Value(UNKNOWN, null, null, null));
+        }
+    }
+
+    // <================================================== Stack =====================================================>
+
+    private void push(int number, Type type, InstructionHandle start, InstructionHandle end) {
+        stack.add(new Value(number, type, start, end));
+    }
+
+    /** Pops one value, which must take the given number of stack words.
+     *
+     * @param words 1, or 2 for a long/double.
+     * @return the value, or an unknown value if it was pushed in an earlier block or the words do not line up.
+     */
+    private Value pop(int words) {
+        if (stack.isEmpty()) return new Value(UNKNOWN, null, null, null);
+        Value value = stack.remove(stack.size() - 1);
+        if (value.getSize() == words) return value;
+        if (value.getSize() < words && !stack.isEmpty() && stack.get(stack.size() - 1).getSize() == 1) {
+            stack.remove(stack.size() - 1); // two unknown words that make up one long/double.
+        } else {
+            stack.clear();
+        }
+        return new Value(UNKNOWN, null, null, null);
+    }
+
+    private Value[] popOperands(Instruction instruction) {
+        int consumed = instruction.consumeStack(cpgen);
+        int operandSize = getOperandSize(instruction);
+        Value[] operands;
+        if (consumed == operandSize) {
+            operands = new Value[] {pop(operandSize)};
+        } else if (isShift(instruction.getOpcode())) {
+            operands = new Value[] {pop(1), pop(operandSize)}; // the shift distance is always an int.
+        } else {
+            operands = new Value[] {pop(operandSize), pop(operandSize)};
+        }
+        swap(operands);
+        return operands;
+    }
+
+    // operands are popped last first, this puts them back in the order they were pushed.
+    private static void swap(Value[] operands) {
+        if (operands.length < 2) return;
+        Value first = operands[0];
+        operands[0] = operands[operands.length - 1];
+        operands[operands.length - 1] = first;
+    }
+
+    /** Finds the first instruction of the run that pushes a computed value: the operands must each be a run of
+     * their own, one right after the other, and right before the computation.
+     *
+     * @return the start of the run, or null if the computation cannot be replaced as a whole.
+     */
+    private static InstructionHandle getRunStart(InstructionHandle handle, Value[] operands) {
+        InstructionHandle expected = handle;
+        for (int index = operands.length - 1; index >= 0; index--) {
+            Value operand = operands[index];
+            if (operand.start == null || operand.end.getNext() != expected) return null;
+            expected = operand.start;
+        }
+        return expected;
+    }
+
+    // <================================================== Locals ====================================================>
+
+    private void setLocal(int index, int size, int number) {
+        if (wideLocals.remove(index - 1)) locals.remove(index - 1); // its second half is overwritten.
+        if (size == 2) {
+            wideLocals.add(index);
+            if (wideLocals.remove(index + 1)) locals.remove(index + 1);
+            locals.remove(index + 1);
+        } else {
+            wideLocals.remove(index);
+        }
+        if (number == UNKNOWN) locals.remove(index);
+        else locals.put(index, number);
+    }
+
+    // a local of the method that currently holds the value, so the value needs no temporary.
+    private int getLocalHolding(int number) {
+        for (Map.Entry<Integer, Integer> local : locals.entrySet()) {
+            if (local.getValue() == number) return local.getKey();
+        }
+        return -1;
+    }
+
+    // <================================================= Rewriting ==================================================>
+
+    // stores every reused value in a temporary right after its first computation, then replaces the reuses.
+    private int rewrite() {
+        methodGen.setMaxLocals();
+        int nextLocal = methodGen.getMaxLocals();
+        Map<Integer, Integer> temporaries = new HashMap<Integer, Integer>();
+        for (Reuse reuse : reuses) {
+            int local = reuse.local;
+            if (local < 0) {
+                Integer temporary = temporaries.get(reuse.value.number);
+                if (temporary == null) {
+                    temporary = nextLocal;
+                    nextLocal += reuse.value.getSize();
+                    temporaries.put(reuse.value.number, temporary);
+                    InstructionHandle first = firstComputations.get(reuse.value.number);
+                    Instruction duplicate = reuse.value.getSize() == 2 ? new DUP2() : new DUP();
+                    instructionList.append(instructionList.append(first, duplicate),
+                            InstructionFactory.createStore(reuse.value.type, temporary));
+                }
+                local = temporary;
+            }
+            replace(reuse.value, InstructionFactory.createLoad(reuse.value.type, local));
+        }
+        return reuses.size();
+    }
+
+    private void replace(Value value, Instruction load) {
+        InstructionHandle loadHandle = instructionList.insert(value.start, load);
+        try {
+            instructionList.delete(value.start, value.end);
+        } catch (TargetLostException e) {
+            // the run can start a block, or end a protected range, the load takes its place.
+            for (InstructionHandle target : e.getTargets()) {
+                for (InstructionTargeter targeter : target.getTargeters()) targeter.updateTarget(target, loadHandle);
+            }
+        }
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    private boolean isConstant(Instruction instruction) {
+        if (instruction instanceof LDC) {
+            // method handles and method types are left unknown, BCEL cannot give their value.
+            byte tag = cpgen.getConstant(((LDC) instruction).getIndex()).getTag();
+            return tag == Constants.CONSTANT_Integer || tag == Constants.CONSTANT_Float
+                    || tag == Constants.CONSTANT_String || tag == Constants.CONSTANT_Class;
+        }
+        return instruction instanceof ConstantPushInstruction || instruction instanceof LDC2_W
+                || instruction instanceof ACONST_NULL;
+    }
+
+    private String getConstantKey(Instruction instruction) {
+        Object value;
+        if (instruction instanceof ConstantPushInstruction) value = ((ConstantPushInstruction) instruction).getValue();
+        else if (instruction instanceof LDC) value = ((LDC) instruction).getValue(cpgen);
+        else if (instruction instanceof LDC2_W) value = ((LDC2_W) instruction).getValue(cpgen);
+        else value = null;
+        // the type tells 1 from 1L and 1.0f, the class tells a string from a class literal with the same name.
+        Type type = ((TypedInstruction) instruction).getType(cpgen);
+        return "constant:" + type.getSignature() + ":" + (value != null ? value.getClass().getName() + ":" + value : "null");
+    }
+
+    private static boolean isPureComputation(Instruction instruction) {
+        int opcode = instruction.getOpcode();
+        return instruction instanceof ArithmeticInstruction || instruction instanceof ConversionInstruction
+                || opcode == Constants.LCMP || opcode == Constants.FCMPL || opcode == Constants.FCMPG
+                || opcode == Constants.DCMPL || opcode == Constants.DCMPG || opcode == Constants.ARRAYLENGTH;
+    }
+
+    private Type getResultType(Instruction instruction) {
+        int opcode = instruction.getOpcode();
+        if (opcode == Constants.ARRAYLENGTH || !(instruction instanceof ArithmeticInstruction
+                || instruction instanceof ConversionInstruction)) {
+            return Type.INT; // comparisons and the array length.
+        }
+        return ((TypedInstruction) instruction).getType(cpgen);
+    }
+
+    // stack words of each operand (the array reference for ARRAYLENGTH, the value for shifts).
+    private int getOperandSize(Instruction instruction) {
+        switch (instruction.getOpcode()) {
+            case Constants.ARRAYLENGTH:
+                return 1;
+            case Constants.LCMP: case Constants.DCMPL: case Constants.DCMPG:
+                return 2;
+            case Constants.FCMPL: case Constants.FCMPG:
+                return 1;
+            default:
+                break;
+        }
+        if (instruction instanceof ConversionInstruction) return instruction.consumeStack(cpgen);
+        return ((TypedInstruction) instruction).getType(cpgen).getSize();
+    }
+
+    // the operation and the numbers of the operands. Operands of commutative integer operations are put in order.
+    private static String getPureKey(int opcode, Value[] operands) {
+        for (Value operand : operands) if (operand.number == UNKNOWN) return null;
+        if (operands.length == 2 && isCommutative(opcode) && operands[0].number > operands[1].number) {
+            return "pure:" + opcode + ":" + operands[1].number + ":" + operands[0].number;
+        }
+        StringBuilder key = new StringBuilder("pure:").append(opcode);
+        for (Value operand : operands) key.append(':').append(operand.number);
+        return key.toString();
+    }
+
+    private static boolean isCommutative(int opcode) {
+        switch (opcode) {
+            case Constants.IADD: case Constants.IMUL: case Constants.IAND: case Constants.IOR: case Constants.IXOR:
+            case Constants.LADD: case Constants.LMUL: case Constants.LAND: case Constants.LOR: case Constants.LXOR:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isShift(int opcode) {
+        return opcode == Constants.ISHL || opcode == Constants.ISHR || opcode == Constants.IUSHR
+                || opcode == Constants.LSHL || opcode == Constants.LSHR || opcode == Constants.LUSHR;
+    }
+
+    private boolean isStable(FieldInstruction instruction) {
+        return isStableField(className, fields, instruction.getReferenceType(cpgen).toString(),
+                instruction.getFieldName(cpgen), instruction.getSignature(cpgen));
+    }
+
+    // the static and instance fields of the same name are told apart by the opcode, the object number follows.
+    private String getFieldKey(FieldInstruction instruction) {
+        boolean isStatic = instruction.getOpcode() == Constants.GETSTATIC || instruction.getOpcode() == Constants.PUTSTATIC;
+        return (isStatic ? "static:" : "field:") + instruction.getFieldName(cpgen) + ":" + instruction.getSignature(cpgen) + ":";
+    }
+
+    private int getNumber(Map<String, Integer> values, String key) {
+        Integer number = values.get(key);
+        if (number == null) {
+            number = nextNumber++;
+            values.put(key, number);
+        }
+        return number;
+    }
+}
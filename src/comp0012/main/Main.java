@@ -6,6 +6,7 @@ import org.kohsuke.args4j.Option;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 
@@ -22,6 +23,27 @@ public class Main extends SimpleFileVisitor<Path> {
     @Option(name="-out",required=true, usage="Root directory where optimised classfiles will be stored")
     private String outputRoot;
 
+    @Option(name="-report", usage="File to write the optimisation report to (CSV if it ends in .csv, JSON otherwise)")
+    private String reportPath;
+
+    @Option(name="-slowest", usage="Number of slowest methods listed in the optimisation report")
+    private int slowestCount = 10;
+
+    @Option(name="-instrument", usage="Write classes with profiling counters instead of optimising them")
+    private boolean instrument;
+
+    @Option(name="-profile", usage="Profile from an instrumented run, only hot methods get the expensive passes")
+    private String profilePath;
+
+    @Option(name="-hotThreshold", usage="Method entries plus loop iterations that make a method hot")
+    private long hotThreshold = 1000;
+
+    @Option(name="-methodThreads", usage="Threads that optimise the methods of one large class at the same time")
+    private int methodThreads = Runtime.getRuntime().availableProcessors();
+
+    private OptimisationReport report;
+    private Profile profile;
+
     private void parseArguments(String args[])
     {
         CmdLineParser parser = new CmdLineParser(this);
@@ -41,7 +63,15 @@ public class Main extends SimpleFileVisitor<Path> {
 	System.out.println("Running COMP207p courswork-2");
         Main main = new Main();
         main.parseArguments(args);
+        ConstantFolder.clearCaches(); // a run may follow another one in the same JVM (see OptimiserClient).
+        main.report = new OptimisationReport(main.slowestCount);
+        if (main.profilePath != null) main.profile = Profile.read(main.profilePath, main.hotThreshold);
         Files.walkFileTree(Paths.get(main.inputRoot), main);
+        if (main.instrument) main.copyProfileRuntime();
+        if (main.reportPath != null) {
+            main.report.write(main.reportPath);
+            System.out.println("Optimisation report written to " + main.reportPath);
+        }
     }
 
     @Override
@@ -55,11 +85,41 @@ public class Main extends SimpleFileVisitor<Path> {
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
         String fname = file.toString();
-        if(fname.endsWith(".class") && !fname.endsWith("Main.class") && !fname.endsWith("ConstantFolder.class")){
-            ConstantFolder cf = new ConstantFolder(file.toString());
+        if(fname.endsWith(".class") && !isOptimiserClass(file)){
             Path rel = Paths.get(inputRoot).relativize(file);
-            cf.write(Paths.get(outputRoot, rel.toString()).toAbsolutePath().toString());
+            String outputPath = Paths.get(outputRoot, rel.toString()).toAbsolutePath().toString();
+            if (instrument) {
+                new ProfileInstrumenter(file.toString()).write(outputPath);
+            } else {
+                ConstantFolder cf = new ConstantFolder(file.toString());
+                cf.setProfile(profile);
+                cf.setMethodThreads(methodThreads);
+                cf.write(outputPath);
+                report.add(cf.getStats());
+            }
         }
         return super.visitFile(file, attrs);
     }
+
+    // instrumented classes call ProfileRuntime, so it is copied next to them to make the output directory runnable.
+    private void copyProfileRuntime() throws IOException {
+        Path target = Paths.get(outputRoot, "comp0012", "main", "ProfileRuntime.class");
+        Files.createDirectories(target.getParent());
+        InputStream in = ProfileRuntime.class.getResourceAsStream("ProfileRuntime.class");
+        try {
+            Files.copy(in, target, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            in.close();
+        }
+    }
+
+    private boolean isOptimiserClass(Path file) {
+        return isOptimiserClass(Paths.get(inputRoot), file);
+    }
+
+    // the optimiser's own classes (Main, ConstantFolder and its passes) are not optimised.
+    static boolean isOptimiserClass(Path inputRoot, Path file) {
+        Path rel = inputRoot.relativize(file);
+        return rel.startsWith(Paths.get("comp0012", "main"));
+    }
 }
@@ -0,0 +1,209 @@
+package comp0012.main;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantFieldref;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Corpus-wide memo of optimised methods. Generated code repeats the same method bodies over and over, in the same
+ * class and across classes, and the passes only depend on the instructions and the constants they use. A method is
+ * keyed by a hash of its bytecode with every constant pool index replaced by the constant it points to, so the same
+ * body in two classes gets the same key. A hit reuses the optimised code of the first method, moved onto the pool of
+ * the new class, instead of running the passes again.
+ *
+ * The memo keeps the pool of every class that contributed an entry, so it only lives for one run: one Main run, or
+ * one request to a daemon worker (see ConstantFolder.clearCaches).
+ */
+class MethodMemo {
+
+    private static final int MAX_ENTRIES = 100000; // beyond this new methods are still optimised, just not stored.
+    private static final Map<String, Entry> ENTRIES = new ConcurrentHashMap<String, Entry>();
+
+    private static class Entry {
+        final Method optimized; // null if the passes left the method as it was.
+        final ConstantPoolGen pool; // the pool the optimised method references.
+        final int constantsFolded;
+        final int deadStoresEliminated;
+        final int subexpressionsEliminated;
+        final int peepholeIterations;
+
+        Entry(Method optimized, ConstantPoolGen pool, OptimisationReport.MethodStats stats) {
+            this.optimized = optimized;
+            this.pool = pool;
+            this.constantsFolded = stats.constantsFolded;
+            this.deadStoresEliminated = stats.deadStoresEliminated;
+            this.subexpressionsEliminated = stats.subexpressionsEliminated;
+            this.peepholeIterations = stats.peepholeIterations;
+        }
+    }
+
+    private MethodMemo() {
+    }
+
+    /** Optimises a method, or reuses the result of an identical method that was optimised before.
+     *
+     * @param classGen the class the method belongs to.
+     * @param method the method to optimise.
+     * @param methodStats counters of the method, copied from the first method on a hit.
+     * @param hot false if the profile marked the method as cold.
+     * @param log true to print what the passes do.
+     * @return the optimised method, or the method that was given if nothing changed.
+     */
+    static Method optimize(ClassGen classGen, Method method, OptimisationReport.MethodStats methodStats, boolean hot, boolean log) {
+        ConstantPoolGen cpgen = classGen.getConstantPool();
+        MethodOptimizer optimizer = new MethodOptimizer(classGen, method, methodStats, log);
+        // methods without candidates are cheaper to scan again than to hash.
+        if (!CandidateScanner.scan(method.getCode(), cpgen).hasCandidates(hot)) return optimizer.optimize(hot);
+
+        String key = getKey(method, classGen, hot);
+        Entry entry = key != null ? ENTRIES.get(key) : null;
+        if (entry != null) {
+            if (log) System.out.println("[MEMO] Reusing The Optimized Code Of An Identical Method.");
+            methodStats.constantsFolded = entry.constantsFolded;
+            methodStats.deadStoresEliminated = entry.deadStoresEliminated;
+            methodStats.subexpressionsEliminated = entry.subexpressionsEliminated;
+            methodStats.peepholeIterations = entry.peepholeIterations;
+            if (entry.optimized == null) return method;
+
+            // an entry of the same class already references this pool, so its indices can be kept as they are.
+            int firstRebound = entry.pool == cpgen ? Integer.MAX_VALUE : 0;
+            Method reused = ConstantPoolRebinder.rebind(entry.optimized, classGen.getClassName(), entry.pool, cpgen, firstRebound);
+            reused.setNameIndex(method.getNameIndex());
+            reused.setAccessFlags(method.getAccessFlags());
+            return reused;
+        }
+
+        Method optimized = optimizer.optimize(hot);
+        if (key != null && ENTRIES.size() < MAX_ENTRIES) {
+            ENTRIES.put(key, new Entry(optimized != method ? optimized : null, cpgen, methodStats));
+        }
+        return optimized;
+    }
+
+    /** Forgets every method optimised so far, and the pools they reference. */
+    static void clear() {
+        ENTRIES.clear();
+    }
+
+    // <=============================================== Normalisation ================================================>
+
+    /** Hashes everything the passes look at: the signature, whether the method is static, which passes run, the
+     * instructions with their constants resolved, the fields whose loads value numbering may reuse, and the exception
+     * table.
+     *
+     * @param method the method, which must have code.
+     * @param classGen its class.
+     * @param hot false if only the fast passes run.
+     * @return the key, or null if the method uses constants that cannot be copied to another pool (INVOKEDYNAMIC,
+     * method handles and types).
+     */
+    static String getKey(Method method, ClassGen classGen, boolean hot) {
+        ConstantPool pool = classGen.getConstantPool().getConstantPool();
+        Field[] fields = classGen.getFields();
+        Code code = method.getCode();
+        byte[] bytecode = code.getCode();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(bytecode.length * 2);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            writeString(out, method.getSignature());
+            out.writeBoolean(method.isStatic());
+            out.writeBoolean(hot);
+
+            int pc = 0;
+            while (pc < bytecode.length) {
+                int opcode = bytecode[pc] & 0xff;
+                int length = CandidateScanner.getLength(bytecode, pc);
+                int index = getConstantIndex(bytecode, pc, opcode);
+                if (index < 0) {
+                    out.write(bytecode, pc, length);
+                } else {
+                    String constant = resolve(pool, index);
+                    if (constant == null) return null;
+                    out.writeByte(opcode);
+                    writeString(out, constant);
+                    if (opcode >= Constants.GETSTATIC && opcode <= Constants.PUTFIELD) {
+                        out.writeBoolean(isStableField(classGen.getClassName(), fields, pool, index));
+                    }
+                    int operandsAfterIndex = opcode == Constants.LDC ? length - 2 : length - 3; // i.e. MULTIANEWARRAY dimensions.
+                    out.write(bytecode, pc + length - operandsAfterIndex, operandsAfterIndex);
+                }
+                pc += length;
+            }
+
+            for (CodeException exception : code.getExceptionTable()) {
+                out.writeShort(exception.getStartPC());
+                out.writeShort(exception.getEndPC());
+                out.writeShort(exception.getHandlerPC());
+                writeString(out, exception.getCatchType() != 0 ? resolve(pool, exception.getCatchType()) : "");
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // cannot happen, the stream is in memory.
+        }
+        return toHex(sha256(bytes.toByteArray()));
+    }
+
+    // writeUTF is limited to 65535 bytes, which an escaped string constant can go past.
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** @return the constant pool index the instruction uses, or -1 if it does not use one. */
+    private static int getConstantIndex(byte[] bytecode, int pc, int opcode) {
+        if (opcode == Constants.LDC) return bytecode[pc + 1] & 0xff;
+        boolean usesIndex = opcode == Constants.LDC_W || opcode == Constants.LDC2_W
+                || (opcode >= Constants.GETSTATIC && opcode <= Constants.NEW)
+                || opcode == Constants.ANEWARRAY || opcode == Constants.CHECKCAST || opcode == Constants.INSTANCEOF
+                || opcode == Constants.MULTIANEWARRAY;
+        if (!usesIndex) return -1;
+        return ((bytecode[pc + 1] & 0xff) << 8) | (bytecode[pc + 2] & 0xff);
+    }
+
+    // the same field reference is only stable in the class that declares it, see LocalValueNumbering.
+    private static boolean isStableField(String className, Field[] fields, ConstantPool pool, int index) {
+        ConstantFieldref field = (ConstantFieldref) pool.getConstant(index);
+        ConstantNameAndType nameAndType = (ConstantNameAndType) pool.getConstant(field.getNameAndTypeIndex());
+        return LocalValueNumbering.isStableField(className, fields, field.getClass(pool).replace('/', '.'),
+                nameAndType.getName(pool), nameAndType.getSignature(pool));
+    }
+
+    // the tag and value of a constant, i.e. "3:1234" for an Integer. Null for the ones that can't change pool.
+    private static String resolve(ConstantPool pool, int index) {
+        Constant constant = pool.getConstant(index);
+        if (constant.getTag() > Constants.CONSTANT_NameAndType) return null;
+        return constant.getTag() + ":" + pool.constantToString(constant);
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256.
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte value : bytes) hex.append(Character.forDigit((value >> 4) & 0xf, 16)).append(Character.forDigit(value & 0xf, 16));
+        return hex.toString();
+    }
+}
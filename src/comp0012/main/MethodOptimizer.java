@@ -0,0 +1,790 @@
+package comp0012.main;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Runs the optimisation passes over a single method (constant folding, branch simplification, value numbering and
+ * peephole). Every method gets a MethodOptimizer of its own, so all the analysis state below belongs to that one
+ * method and methods can be optimised independently of each other. The only shared object is the constant pool of
+ * the class.
+ */
+class MethodOptimizer {
+
+    private final String className;
+    private final ConstantPoolGen cpgen;
+    private final Field[] fields; // fields of the class, value numbering only reuses loads of these.
+    private final OptimisationReport.MethodStats methodStats;
+    private final boolean log;
+
+    private Method method; // the latest version of the method, replaced after every pass.
+
+    private final Stack<Number> valuesStack = new Stack<Number>();
+    private final Stack<InstructionHandle> loadInstructions = new Stack<InstructionHandle>();
+    private final HashMap<Integer, Number> variables = new HashMap<Integer, Number>();
+    private List<InstructionHandle> loopBounds;
+
+    // these are used for PeepHole Optimization (Detecting dead code).
+    private final HashMap<Integer, InstructionHandle[]> variableInstructions = new HashMap<Integer, InstructionHandle[]>();
+    private final HashMap<Integer, Boolean> variableUsed = new HashMap<Integer, Boolean>();
+
+    private boolean deleteElseBranch;
+    private boolean blockOperationIfInLoop;
+    // set once a branch on an unknown value is kept. The values below are tracked in instruction order without
+    // looking at branches, so past that point they could come from either arm and nothing more is folded.
+    private boolean foldingStopped;
+
+    /**
+     * @param classGen the class the method belongs to, new constants are added to its pool.
+     * @param method the method to optimise.
+     * @param methodStats counters of the method for the optimisation report.
+     * @param log true to print what every pass does.
+     */
+    MethodOptimizer(ClassGen classGen, Method method, OptimisationReport.MethodStats methodStats, boolean log) {
+        this.className = classGen.getClassName();
+        this.method = method;
+        this.cpgen = classGen.getConstantPool();
+        this.fields = classGen.getFields();
+        this.methodStats = methodStats;
+        this.log = log;
+    }
+
+    private void displayLog(String log){
+        if (this.log) System.out.println(log);
+    }
+
+    /** Runs the passes that the pre-scan finds candidates for, every pass rescans the method, as an earlier pass can
+     * create work for a later one.
+     *
+     * @param hot false if the profile marked the method as cold, then only the fast passes run.
+     * @return the optimised method, or the method that was given if no pass changed it.
+     */
+    Method optimize(boolean hot) {
+        if (method.getCode() == null) {
+            displayLog("[PRE_SCAN] Abstract/Native Method, Nothing To Optimize.");
+        } else if (hot) {
+            if (scanMethod().hasFoldingCandidates()) runRegularOptimization();
+            if (scanMethod().hasBranchCandidates()) runBranchSimplification();
+            if (scanMethod().hasSubexpressionCandidates()) runValueNumbering();
+            if (scanMethod().hasDeadStoreCandidates()) runPeepHoleOptimization();
+        } else {
+            // cold according to the profile: only the cheap clean up, the folding and peephole passes are skipped.
+            displayLog("[PROFILE] Cold Method, Running Fast Passes Only.");
+            if (scanMethod().hasBranchCandidates()) runBranchSimplification();
+        }
+        return method;
+    }
+
+    // looks for patterns in the raw bytecode, so methods a pass cannot change are never decoded for it.
+    private CandidateScanner scanMethod(){
+        CandidateScanner candidates = CandidateScanner.scan(method.getCode(), cpgen);
+        displayLog("[PRE_SCAN] Candidates -> Folding: " + candidates.hasFoldingCandidates() + " | Branches: "
+                + candidates.hasBranchCandidates() + " | Dead Stores: " + candidates.hasDeadStoreCandidates()
+                + " | Subexpressions: " + candidates.hasSubexpressionCandidates());
+        return candidates;
+    }
+
+    private void runRegularOptimization(){
+        displayLog("============= [OPTIMIZE] Starting Regular Optimization =============");
+        regularOptimization(method);
+        clearDataContainers();
+        displayLog("\n");
+    }
+
+    private void runBranchSimplification(){
+        displayLog("============= [OPTIMIZE] Starting Branch Simplification =============");
+        branchSimplification(method);
+        displayLog("\n");
+    }
+
+    private void runValueNumbering(){
+        displayLog("============= [OPTIMIZE] Starting Value Numbering =============");
+        valueNumbering(method);
+        displayLog("\n");
+    }
+
+    private void runPeepHoleOptimization(){
+        displayLog("============= [OPTIMIZE] Starting PeepHole Optimization =============");
+        boolean optimized = false;
+        while (!optimized){
+            // keeps doing peephole optimization until there are no more changes.
+            optimized = peepHoleOptimization(method);
+            methodStats.peepholeIterations++;
+            clearDataContainers();
+        }
+        displayLog("\n");
+    }
+
+    /** creates a MethodGen for the given method, on top of a fresh InstructionList decoded from its code.
+     * The exception table is carried over so that handlers keep pointing at the right instructions.
+     *
+     * @param method the method that is being optimised.
+     * @return MethodGen holding the instruction list and exception handlers of the method.
+     */
+    private MethodGen createMethodGen(Method method){
+        Code methodCode = method.getCode(); // gets the code inside the method.
+        InstructionList instructionList = new InstructionList(methodCode.getCode()); // gets code and makes an list of Instructions.
+        MethodGen methodGen = new MethodGen(method.getAccessFlags(), method.getReturnType(), method.getArgumentTypes(),
+                null, method.getName(), className, instructionList, cpgen);
+        // MethodGen makes up "this"/"argN" local variable entries, they only add attributes and pool entries.
+        methodGen.removeLocalVariables();
+
+        for (CodeException exception : methodCode.getExceptionTable()) {
+            ObjectType catchType = null; // catch type of 0 means it catches everything (finally).
+            if (exception.getCatchType() != 0) {
+                String className = cpgen.getConstantPool().getConstantString(exception.getCatchType(), Constants.CONSTANT_Class);
+                catchType = new ObjectType(className.replace('/', '.'));
+            }
+            // the end pc in the class file is exclusive, but in BCEL it is the last instruction that is protected.
+            InstructionHandle afterEnd = instructionList.findHandle(exception.getEndPC());
+            InstructionHandle endHandle = afterEnd != null ? afterEnd.getPrev() : instructionList.getEnd();
+            methodGen.addExceptionHandler(instructionList.findHandle(exception.getStartPC()), endHandle,
+                    instructionList.findHandle(exception.getHandlerPC()), catchType);
+        }
+        return methodGen;
+    }
+
+    // replaces the original method code with the optimized method code.
+    private void replaceMethodCode(MethodGen methodGen){
+        methodGen.setMaxStack();
+        methodGen.setMaxLocals();
+        Method newMethod = methodGen.getMethod();
+        // BCEL dumps INVOKEDYNAMIC without its two zero bytes, so the code is encoded again with the full instruction.
+        newMethod.getCode().setCode(InstructionEncoder.getByteCode(methodGen.getInstructionList()));
+        method = newMethod;
+    }
+
+    // clears all the data in all the containers.
+    private void clearDataContainers() {
+        deleteElseBranch = false;
+        blockOperationIfInLoop = false;
+        foldingStopped = false;
+        loadInstructions.clear();
+        valuesStack.clear(); // clears stack for next method.
+        variables.clear(); // clears variables for next method.
+        variableInstructions.clear();
+        variableUsed.clear();
+        displayLog("[CLEAR_DATA] Cleared All Data On Stack");
+    }
+
+    // <============================================ Regular Optimization =============================================>
+
+    private void regularOptimization(Method method) {
+        displayLog("[REGULAR_OPTIMIZATION] Starting Regular Optimization");
+        MethodGen methodGen = createMethodGen(method);
+        InstructionList instructionList = methodGen.getInstructionList();
+        displayLog("*[REGULAR_OPTIMIZATION] Display Initial Instruction List");
+        displayLog(instructionList.toString());
+
+        loadLoopBounds(instructionList);
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            // Main Optimization (SimpleFolding, ConstantVariableFolding, DynamicVariableFolding).
+            handleInstruction(handle, instructionList);
+        }
+
+        displayLog("*[REGULAR_OPTIMIZATION] Optimized Code: ");
+        displayLog(instructionList.toString());
+        instructionList.setPositions(true);
+        replaceMethodCode(methodGen);
+    }
+
+    /** handles the instruction inside of the InstructionHandle by first checking its type then optimising it.
+     *
+     * @param handle wrapper that contains the instruction.
+     * @param instructionList list of all the instruction, this is required because some changes are made here.
+     */
+    private void handleInstruction(InstructionHandle handle, InstructionList instructionList){
+        if (foldingStopped) return;
+        Instruction instruction = handle.getInstruction(); // gets the instruction from the instruction handle.
+        displayLog("[INSTRUCTION] Next Instruction -> " + instruction);
+
+        // Operation Instructions (Instructions that use the previous 2 loaded values)
+        if (instruction instanceof ArithmeticInstruction) handleArithmetic(handle, instructionList);
+        if (instruction instanceof LCMP) handleLongComparison(handle, instructionList);
+        else if (instruction instanceof IfInstruction) handleComparison(handle, instructionList);
+
+        if (instruction instanceof GotoInstruction) handleGoTo(handle, instructionList);
+        if (instruction instanceof Select) handleSwitch(handle, instructionList);
+
+        if (instruction instanceof StoreInstruction) handleStore(handle);
+
+        // Load Instructions [Load Constant (SimpleFolding) / Load Variable (ConstantVariableFolding)]
+        if (isLoadConstantValueInstruction(instruction)) handleLoad(handle);
+        else if (instruction instanceof LoadInstruction) handleVariableLoad(handle);
+        else if (instruction instanceof ConversionInstruction) handleConversion(handle, instructionList);
+        else blockOperationIfInLoop = false; // if it is not a load instruction then switch off block after handling.
+
+        displayLog("");
+    }
+
+    //                     <==================== Handling Instructions ====================>
+
+    // Method that converts the value on the top of the stack to another type.
+    private void handleConversion(InstructionHandle handle, InstructionList instructionList) {
+        if (isLoadConstantValueInstruction(loadInstructions.peek().getInstruction()) || !blockOperationIfInLoop) {
+            // if its a constant or if the variable does not change in the loop.
+            valuesStack.push(convertValue(handle.getInstruction(), valuesStack.pop()));
+            methodStats.constantsFolded++;
+            displayLog("[CONVERSION] Converted Top Of Stack Value To: " + valuesStack.peek());
+
+            removeHandle(instructionList, loadInstructions.pop()); // remove load instruction
+            handle.setInstruction(createLoadInstruction(valuesStack.peek(), cpgen)); // change conversion instruction with load.
+            loadInstructions.push(handle); // push new load instruction onto the loadInstruction stack.
+        }
+    }
+
+    // Method that checks whether to delete the Else Branch of a IfInstruction, and deletes it if necessary.
+    private void handleGoTo(InstructionHandle handle, InstructionList instructionList) {
+        if (deleteElseBranch){
+            deleteElseBranch = false;
+            GotoInstruction instruction = (GotoInstruction) handle.getInstruction();
+            InstructionHandle targetHandle = instruction.getTarget();
+            removeHandle(instructionList, handle, targetHandle.getPrev());
+        }
+    }
+
+    private void handleLongComparison(InstructionHandle handle, InstructionList instructionList) {
+        if (blockOperationIfInLoop) return;
+
+        long first = (Long) valuesStack.pop();
+        long second = (Long) valuesStack.pop();
+
+        // LCMP returns -1, 0, 1.
+        int result = 0;
+        if (first > second) result = 1;
+        else if (first < second) result = -1;
+
+        removePreviousTwoLoadInstructions(instructionList);
+        handle.setInstruction(createLoadInstruction(result, cpgen));
+        loadInstructions.push(handle);
+        valuesStack.push(result);
+        methodStats.constantsFolded++;
+    }
+
+    private void handleComparison(InstructionHandle handle, InstructionList instructionList) {
+        if (blockOperationIfInLoop) return;
+
+        IfInstruction comparisonInstruction = (IfInstruction) handle.getInstruction();
+        int operands = isInstructionComparingWithZero(comparisonInstruction) ? 1 : 2;
+        if (hasUnknownOperands(operands)) {
+            stopFolding(); // i.e. comparing a method parameter, the branch stays and either arm may run.
+            return;
+        }
+
+        methodStats.constantsFolded++;
+        if (getComparisonOutcome(instructionList, comparisonInstruction)) {
+            removeHandle(instructionList, handle);
+            deleteElseBranch = true;
+        } else {
+            // if outcome is false then remove the comparison, and remove the if branch (all instructions to target).
+            InstructionHandle targetHandle = comparisonInstruction.getTarget();
+            removeHandle(instructionList, handle, targetHandle.getPrev());
+        }
+    }
+
+    // Method that replaces a switch on a known value with a GOTO to the case that would be taken.
+    private void handleSwitch(InstructionHandle handle, InstructionList instructionList) {
+        if (blockOperationIfInLoop) return;
+        if (hasUnknownOperands(1)) {
+            stopFolding();
+            return;
+        }
+
+        int selector = valuesStack.pop().intValue();
+        methodStats.constantsFolded++;
+        removeHandle(instructionList, loadInstructions.pop()); // remove the load of the selector.
+
+        Select switchInstruction = (Select) handle.getInstruction();
+        InstructionHandle target = switchInstruction.getTarget(); // default target, if none of the cases match.
+        int[] matches = switchInstruction.getMatchs();
+        for (int index = 0; index < matches.length; index++) {
+            if (matches[index] == selector) target = switchInstruction.getTargets()[index];
+        }
+        displayLog("[SWITCH] Selector " + selector + " Jumps To: " + target.getInstruction());
+        handle.setInstruction(new GOTO(target)); // the other cases become unreachable, and are removed later.
+    }
+
+    private void handleStore(InstructionHandle handle) {
+        Number value = valuesStack.pop();
+        loadInstructions.pop();
+        displayLog("[STORE] Storing Value: " + value);
+        int key = ((StoreInstruction) handle.getInstruction()).getIndex();
+        variables.put(key, value);
+    }
+
+    private void handleVariableLoad(InstructionHandle handle) {
+        int variableKey = ((LoadInstruction) handle.getInstruction()).getIndex();
+        valuesStack.push(variables.get(variableKey));
+        loadInstructions.push(handle);
+        displayLog("[LOAD_VARIABLE] Loaded Variable Value: " + valuesStack.peek());
+        // if not already blocking: block if this variable load is in a loop & the variable stores a value in the loop.
+        blockOperationIfInLoop = blockOperationIfInLoop || variableChangesInLoop(handle, variableKey);
+        displayLog("[BLOCK] Status: " + blockOperationIfInLoop);
+    }
+
+    private void handleLoad(InstructionHandle handle) {
+        valuesStack.push(getLoadConstantValue(handle.getInstruction(), cpgen));
+        loadInstructions.push(handle);
+        displayLog("[LOAD_CONSTANT] Loaded Constant Value: " + valuesStack.peek());
+    }
+
+    private void handleArithmetic(InstructionHandle handle, InstructionList instructionList) {
+        if (blockOperationIfInLoop) return; // if block operation is true, then skip this instruction.
+
+        Number second = valuesStack.pop(); // last load is on the top of the stack.
+        Number first = valuesStack.pop();
+        valuesStack.push(performArithmeticOperation(first, second, handle.getInstruction()));
+        methodStats.constantsFolded++;
+
+        displayLog("[ARITHMETIC_OPERATION] Calculated Value: " + valuesStack.peek() + " Pushed Onto Stack.");
+        condenseOperationInstructions(instructionList, handle, valuesStack.peek()); // using peek because it needs to be in stack.
+    }
+
+    // <========================================== Branch Simplification =============================================>
+
+    // turns if-chains into switches, threads jumps, collapses branches that no longer decide anything and removes
+    // code that became unreachable.
+    private void branchSimplification(Method method){
+        MethodGen methodGen = createMethodGen(method);
+        InstructionList instructionList = methodGen.getInstructionList();
+
+        int switches = new IfChainConverter(methodGen).convert();
+        displayLog("[BRANCH_SIMPLIFICATION] Converted " + switches + " If-Chains Into Switches");
+        int changes = new BranchSimplifier(methodGen).simplify();
+        displayLog("[BRANCH_SIMPLIFICATION] Threaded/Removed " + changes + " Branches And Unreachable Instructions");
+        displayLog(instructionList.toString());
+
+        instructionList.setPositions(true);
+        replaceMethodCode(methodGen);
+    }
+
+    // <============================================== Value Numbering ===============================================>
+
+    // replaces computations and loads that are repeated within a basic block by a load of the value they computed.
+    private void valueNumbering(Method method){
+        MethodGen methodGen = createMethodGen(method);
+        InstructionList instructionList = methodGen.getInstructionList();
+
+        int eliminated = new LocalValueNumbering(methodGen, className, fields).eliminate();
+        displayLog("[VALUE_NUMBERING] Replaced " + eliminated + " Redundant Computations And Loads");
+        if (eliminated == 0) return; // keeps the method as it was, so an untouched method keeps its frames.
+        methodStats.subexpressionsEliminated += eliminated;
+        displayLog(instructionList.toString());
+
+        instructionList.setPositions(true);
+        replaceMethodCode(methodGen);
+    }
+
+    // <=========================================== PeepHole Optimization ============================================>
+
+    private boolean peepHoleOptimization(Method method){
+        MethodGen methodGen = createMethodGen(method);
+        InstructionList instructionList = methodGen.getInstructionList();
+
+        loadLoopBounds(instructionList);
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            checkInstruction(handle);
+        }
+        boolean optimized = removeDeadCode(instructionList);
+
+        instructionList.setPositions(true);
+        replaceMethodCode(methodGen);
+        return optimized;
+    }
+
+    // deletes dead code, i.e. variables that are not used.
+    private boolean removeDeadCode(InstructionList instructionList){
+        displayLog("[DEAD_CODE_REMOVE] Removing The Following Instructions: ");
+        boolean optimized = true;
+        for (int key: variableUsed.keySet()){
+            if (!variableUsed.get(key)){
+                optimized = false;
+                removeHandle(instructionList, variableInstructions.get(key)[0]); // delete the LOAD instruction.
+                removeHandle(instructionList, variableInstructions.get(key)[1]); // delete the STORE instruction.
+                methodStats.deadStoresEliminated++;
+            }
+        }
+        return optimized;
+    }
+
+    //                       <===================== Instruction Recorders =====================>
+
+    // handles the instruction inside of the InstructionHandle by first checking its type then optimising it.
+    private void checkInstruction(InstructionHandle handle){
+        Instruction instruction = handle.getInstruction(); // gets the instruction from the instruction handle.
+
+        // Load Instructions
+        if (isLoadConstantValueInstruction(instruction)) checkLoad(handle);
+        else if (instruction instanceof LoadInstruction) checkVariableLoad(handle);
+
+        // Store Instructions
+        if (instruction instanceof StoreInstruction) checkStore(handle);
+    }
+
+    // Method that check if a variable value is used which implies that the variable is not dead.
+    private void checkVariableLoad(InstructionHandle handle) {
+        int key = ((LoadInstruction) handle.getInstruction()).getIndex();
+        loadInstructions.push(handle);
+        variableUsed.put(key, true);
+    }
+
+    private void checkLoad(InstructionHandle handle) {
+        loadInstructions.push(handle); // pushes the load instruction onto the stack.
+    }
+
+    private void checkStore(InstructionHandle handle) {
+        int key = ((StoreInstruction) handle.getInstruction()).getIndex();
+        if (loadInstructions.isEmpty() || loadInstructions.peek() != handle.getPrev()) {
+            // value comes from somewhere else (i.e. a method call or a caught exception), so the store can't be paired.
+            variableInstructions.remove(key);
+            variableUsed.remove(key);
+            return;
+        }
+        variableUsed.put(key, false); // has not been used yet, so set to false.
+
+        InstructionHandle[] instructions = {loadInstructions.pop(), handle}; // protect the LOAD & STORE Instructions.
+        variableInstructions.put(key, instructions);
+    }
+
+
+    // <=========================================== Auxiliary Methods ================================================>
+
+    private boolean getComparisonOutcome(InstructionList instructionList, IfInstruction instruction){
+        if (isInstructionComparingWithZero(instruction)) {
+            // if its comparing with 0, then only one value is loaded onto the stack (which needs to get removed).
+            removeHandle(instructionList, loadInstructions.pop());
+            return parseComparisonInstruction(valuesStack.pop(), instruction);
+        }
+        // usually should be the other way around, but the compiler inverses the instruction (i.e. > becomes <=)
+        Number first = valuesStack.pop();
+        Number second = valuesStack.pop();
+        removePreviousTwoLoadInstructions(instructionList); // else remove the two values that are being compared.
+        return parseComparisonInstruction(first, second, instruction);
+    }
+
+
+    // checks if any of the top values on the stack are not known at compile time (i.e. method parameters).
+    private boolean hasUnknownOperands(int operands){
+        if (valuesStack.size() < operands || loadInstructions.size() < operands) return true;
+        for (int depth = 1; depth <= operands; depth++) {
+            if (valuesStack.get(valuesStack.size() - depth) == null) return true;
+        }
+        return false;
+    }
+
+    // keeps the rest of the method as it is: a store on one arm of the kept branch would otherwise be folded into
+    // the code after the arms join, whichever arm runs.
+    private void stopFolding(){
+        displayLog("[STOP_FOLDING] Branch On An Unknown Value, Leaving The Rest Of The Method As It Is.");
+        foldingStopped = true;
+        variables.clear();
+        valuesStack.clear();
+        loadInstructions.clear();
+    }
+
+    /** used when performing an operation such as arithmetic or comparison, to basically reduce 3 instructions to 1.
+     * 3 instructions being: LOAD X, LOAD Y, OPERATION. into just: LOAD Z, where Z is the result.
+     *
+     * @param instructionList list of instructions in the method, used to delete the unneeded load statements.
+     * @param handle instruction wrapper that contains the instruction that performs the operation.
+     * @param value the resultant value from the operation, that requires a Load Instruction.
+     */
+    private void condenseOperationInstructions(InstructionList instructionList, InstructionHandle handle, Number value) {
+        displayLog("[CONDENSING] Condensing Instructions Into LOAD: " + value);
+        removePreviousTwoLoadInstructions(instructionList); // remove the 2 LOAD Instructions
+        switchInstructionToLoadNumber(handle, value); // creates a load instruction that replaces the operation.
+    }
+
+    /** creates a load instruction using the value argument given, and replaces the instruction in handle with it.
+     *
+     * @param handle an instruction wrapper that holds the instruction to be replaced.
+     * @param value a value that the LoadInstruction will contain (i.e. LOAD value)
+     */
+    private void switchInstructionToLoadNumber(InstructionHandle handle, Number value){
+        handle.setInstruction(createLoadInstruction(value, cpgen));
+        loadInstructions.push(handle);
+        displayLog("[SWITCHED_INSTRUCTION] Switched Instruction Into Load: " + value + " | " + handle.getInstruction());
+    }
+
+    //pops the load instructions from the stack, and using that to reference the instructions that need to get deleted.
+    //this method is primarily used to remove the load instructions that were used for operations (Arithmetic/Comparison).
+    private void removePreviousTwoLoadInstructions(InstructionList instructionList) {
+        removeHandle(instructionList, loadInstructions.pop());
+        removeHandle(instructionList, loadInstructions.pop());
+    }
+
+    //Loads the loop bounds (the first instruction and last instruction of a loop) into an ArrayList.
+    private void loadLoopBounds(InstructionList instructionList) {
+        loopBounds = new ArrayList<InstructionHandle>();
+        for(InstructionHandle handle : instructionList.getInstructionHandles()) {
+            if(handle.getInstruction() instanceof GotoInstruction) {
+                GotoInstruction instruction = (GotoInstruction) handle.getInstruction(); // casts GoToInstruction
+                if (instruction.getTarget().getPosition() < handle.getPosition()){ // if the GoTo leads upwards.
+                    loopBounds.add(instruction.getTarget()); // start of loop
+                    loopBounds.add(handle); // end of loop (GOTO Instruction)
+                }
+            }
+        }
+        displayLog("[LOAD_LOOP_BOUNDS] Loaded Loop Bounds. Number of Loops: " + loopBounds.size()/2);
+    }
+
+    /** Method that locates the loop that a given instruction belongs to.
+     *
+     * @param handle InstructionHandle that has the Instruction that we need to fetch the loop for.
+     * @return the first Instruction Handle inside the loop.
+     */
+    private InstructionHandle locateLoopForInstruction(InstructionHandle handle){
+        int instructionPosition = handle.getPosition();
+        for (int loopStartBounds = 0; loopStartBounds < loopBounds.size(); loopStartBounds += 2){
+            InstructionHandle loopStartInstruction = loopBounds.get(loopStartBounds);
+            InstructionHandle loopEndInstruction = loopBounds.get(loopStartBounds+1);
+
+            if (instructionPosition >= loopStartInstruction.getPosition() && instructionPosition < loopEndInstruction.getPosition()){
+                displayLog("[LOOP_LOCATED] Loop Located @ " + loopStartInstruction.getInstruction() + " ~ " + loopEndInstruction.getInstruction());
+                return loopStartInstruction;
+            }
+        }
+        return null;
+    }
+
+    /** Method that detects whether the given variable changes during the loop.
+     *
+     * @param handle Instruction Wrapper that holds the instruction.
+     * @param key the key of the variable.
+     * @return true/false to indicate whether the variable changes value during the loop.
+     */
+    private boolean variableChangesInLoop(InstructionHandle handle, int key){
+        InstructionHandle handleInLoop = locateLoopForInstruction(handle);
+
+        while (handleInLoop != null && !(handleInLoop.getInstruction() instanceof GotoInstruction)){
+            Instruction instruction = handleInLoop.getInstruction();
+            if (instruction instanceof StoreInstruction) {
+                if (((StoreInstruction) instruction).getIndex() == key) return true; // && ((StoreInstruction) instruction).getIndex() == key)
+            } else if (instruction instanceof IINC){
+                if (((IINC) instruction).getIndex() == key) return true; // && ((StoreInstruction) instruction).getIndex() == key)
+            }
+            handleInLoop = handleInLoop.getNext();
+        }
+        return false;
+    }
+
+    // Removes an instruction from the instruction list.
+    private void removeHandle(InstructionList instructionList, InstructionHandle handle) {
+        displayLog("[REMOVING] Removing Instruction: " + handle.getInstruction());
+        InstructionHandle nextHandle = handle.getNext(); // used to get the next instruction if its a target.
+        try {
+            instructionList.delete(handle);
+        } catch (TargetLostException e) {
+            // raised if targeted by a GOTO or If Instruction etc. Update the targeters with the next Instruction.
+            for (InstructionHandle target : e.getTargets()) {
+                for (InstructionTargeter targeter : target.getTargeters()) targeter.updateTarget(target, nextHandle);
+            }
+        }
+    }
+
+    /** Removes the instructions from two points.
+     *
+     * @param instructionList the list of instructions.
+     * @param handle starting point instruction (where to start deleting from)
+     * @param targetHandle end point instruction (where to stop deleting)
+     */
+    private void removeHandle(InstructionList instructionList, InstructionHandle handle, InstructionHandle targetHandle) {
+        displayLog("[REMOVING] Removing Instructions: " + handle.getInstruction() + " ~ " + targetHandle.getInstruction());
+        InstructionHandle nextHandle = targetHandle.getNext(); // first instruction after the deleted range.
+        try {
+            instructionList.delete(handle, targetHandle);
+        } catch (TargetLostException e) {
+            // instructions in the range can still be targeted from outside it (i.e. the start of a loop), so move
+            // those targeters onto the instruction that now follows the deleted range.
+            for (InstructionHandle target : e.getTargets()) {
+                for (InstructionTargeter targeter : target.getTargeters()) targeter.updateTarget(target, nextHandle);
+            }
+        }
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    // checks if the Instruction Loads a constant value.
+    private static boolean isLoadConstantValueInstruction(Instruction instruction){
+        return (instruction instanceof LDC || instruction instanceof LDC2_W ||
+                instruction instanceof SIPUSH || instruction instanceof BIPUSH ||
+                instruction instanceof ICONST || instruction instanceof FCONST ||
+                instruction instanceof DCONST || instruction instanceof LCONST);
+    }
+
+    // checks if this instruction is an instruction that gets compared with zero.
+    private static boolean isInstructionComparingWithZero(Instruction instruction){
+        return instruction instanceof  IFLE || instruction instanceof IFLT || instruction instanceof IFGE ||
+                instruction instanceof IFGT || instruction instanceof IFEQ || instruction instanceof IFNE;
+    }
+
+    /** Converts Number value into another type. First letter is the starting type, second letter is the target type
+     * i.e. I2D means Integer to Double.
+     *
+     * @param instruction Instruction instance that has the type of conversion.
+     * @param value the value to convert.
+     * @return converted value.
+     */
+    private static Number convertValue(Instruction instruction, Number value) {
+        if (instruction instanceof I2D || instruction instanceof L2D || instruction instanceof F2D){
+            return value.doubleValue();
+        } else if (instruction instanceof I2F || instruction instanceof L2F || instruction instanceof D2F){
+            return value.floatValue();
+        } else if (instruction instanceof I2L || instruction instanceof D2L || instruction instanceof F2L){
+            return value.longValue();
+        } else if (instruction instanceof D2I || instruction instanceof F2I || instruction instanceof L2I){
+            return value.intValue();
+        }
+        throw new IllegalStateException("Instruction not recognised");
+    }
+
+    // takes in a value and a instruction that compares with 0, and returns the result
+	private static boolean parseComparisonInstruction(Number first, Instruction instruction){
+        System.out.println("COMPARING WITH 0: " + first);
+    	if (instruction instanceof IFLE) return first.intValue() <= 0;
+		else if (instruction instanceof IFLT) return first.intValue() < 0;
+		else if (instruction instanceof IFGE) return first.intValue() >= 0;
+		else if (instruction instanceof IFGT) return first.intValue() > 0;
+		else if (instruction instanceof IFEQ) return first.intValue() == 0;
+		else if (instruction instanceof IFNE) return first.intValue() != 0;
+
+		throw new IllegalStateException(String.valueOf(instruction)); // if it is None of these objects then error.
+	}
+
+    // takes in 2 values and a instruction that compares with 0, and returns the result
+    private static boolean parseComparisonInstruction(Number first, Number second, Instruction instruction){
+        System.out.println("COMPARING: " + first + " w/ " + second);
+        if (instruction instanceof IF_ICMPLE) return first.intValue() <= second.intValue();
+        else if (instruction instanceof IF_ICMPLT) return first.intValue() < second.intValue();
+        else if (instruction instanceof IF_ICMPGE) return first.intValue() >= second.intValue();
+        else if (instruction instanceof IF_ICMPGT) return first.intValue() > second.intValue();
+        else if (instruction instanceof IF_ICMPEQ) return first.intValue() == second.intValue();
+        else if (instruction instanceof IF_ICMPNE) return first.intValue() != second.intValue();
+
+        throw new IllegalStateException(String.valueOf(instruction)); // if it is None of these objects then error.
+    }
+
+    /** This method creates a load instruction using the value that was given to it.
+     * LDC2_W is for Doubles/Longs | LDC is for Floats/Integers.
+     *
+     * @param value a Number object that represents a value.
+     * @return an Load Instruction that loads the given number value.
+     */
+	private static Instruction createLoadInstruction(Number value, ConstantPoolGen cpgen){
+		if (value instanceof Double){
+			return new LDC2_W(cpgen.addDouble((Double) value)); // pushes double
+		} else if (value instanceof Integer){
+		    int int_value = (Integer) value;
+		    if (int_value >= -1 && int_value <= 5) return new ICONST(int_value);
+			return new LDC(cpgen.addInteger((Integer) value)); // pushes integer.
+		} else if (value instanceof Long){
+			return new LDC2_W(cpgen.addLong((Long) value)); // pushes long
+		} else if (value instanceof Float){
+			return new LDC(cpgen.addFloat((Float) value)); // pushes float.
+		}
+		throw new IllegalStateException("Illegal Value");
+	}
+
+    /** Gets the value that is to be loaded from a load instruction.
+	 *
+	 * @param nextInstruction the LoadInstruction that holds the value to be loaded.
+	 * @return a Number object that represents the value.
+	 */
+	private static Number getLoadConstantValue(Instruction nextInstruction, ConstantPoolGen cpgen) {
+		if (nextInstruction instanceof LDC) {
+		    // LDC loads a integer/float onto the stack, or a String/Class which is unknown like any other reference.
+			Object value = ((LDC) nextInstruction).getValue(cpgen);
+			return value instanceof Number ? (Number) value : null;
+		} else if (nextInstruction instanceof LDC2_W) {
+		    // LDC2_W loads a long/double onto the stack.
+			return ((LDC2_W) nextInstruction).getValue(cpgen);
+		} else if (nextInstruction instanceof BIPUSH) {
+		    // BIPUSH loads a byte onto the stack.
+			return ((BIPUSH) nextInstruction).getValue();
+		} else if (nextInstruction instanceof SIPUSH) {
+		    // SIPUSH loads a short onto the stack.
+			return ((SIPUSH) nextInstruction).getValue();
+		} else if (nextInstruction instanceof ICONST){
+		    // ICONST loads an integer constant (value between -1 and 5 inclusive).
+			return ((ICONST) nextInstruction).getValue();
+		} else if (nextInstruction instanceof FCONST){
+		    // FCONST loads a float constant (0.0 or 1.0 or 2.0).
+			return ((FCONST) nextInstruction).getValue();
+		} else if (nextInstruction instanceof DCONST){
+		    // DCONST loads a double constant (0.0 or 1.0).
+			return ((DCONST) nextInstruction).getValue();
+		} else if (nextInstruction instanceof LCONST){
+		    // LCONST loads a long constant (0 or 1).
+			return ((LCONST) nextInstruction).getValue();
+		}
+		return null;
+	}
+
+	/**Performs an arithmetic operation using the popping the first 2 values in the stack, and pushing the combined val.
+	 *
+	 * @param nextInstruction the instruction that indicates the type of arithmetic operation.
+	 */
+	private static Number performArithmeticOperation(Number first, Number second, Instruction nextInstruction) {
+		Number combinedValue ;
+
+		// I represents Integer / D represents Double / F represents Float / L represents Long.
+        // 4 possible operations (ADD / SUB / MUL / DIV).
+
+		// <------ Integer Operations ------>
+		if (nextInstruction instanceof IADD){
+			combinedValue = first.intValue() + second.intValue();
+		} else if (nextInstruction instanceof ISUB){
+			combinedValue = first.intValue() - second.intValue();
+		} else if (nextInstruction instanceof IMUL){
+			combinedValue = first.intValue() * second.intValue();
+		} else if (nextInstruction instanceof IDIV){
+			combinedValue = first.intValue() / second.intValue();
+		}
+
+		// <------ Double Operations ------>
+		else if (nextInstruction instanceof DADD){
+			combinedValue = first.doubleValue() + second.doubleValue();
+		} else if (nextInstruction instanceof DSUB){
+			combinedValue = first.doubleValue() - second.doubleValue();
+		} else if (nextInstruction instanceof DMUL){
+			combinedValue = first.doubleValue() * second.doubleValue();
+		} else if (nextInstruction instanceof DDIV){
+			combinedValue = first.doubleValue() / second.doubleValue();
+		}
+
+		// <------ Float Operations ------>
+		else if (nextInstruction instanceof FADD){
+			combinedValue = first.floatValue() + second.floatValue();
+		} else if (nextInstruction instanceof FSUB){
+			combinedValue = first.floatValue() - second.floatValue();
+		} else if (nextInstruction instanceof FMUL){
+			combinedValue = first.floatValue() * second.floatValue();
+		} else if (nextInstruction instanceof FDIV){
+			combinedValue = first.floatValue() / second.floatValue();
+		}
+
+		// <------ Long Operations ------>
+		else if (nextInstruction instanceof LADD){
+			combinedValue = first.longValue() + second.longValue();
+		} else if (nextInstruction instanceof LSUB){
+			combinedValue = first.longValue() - second.longValue();
+		} else if (nextInstruction instanceof LMUL){
+			combinedValue = first.longValue() * second.longValue();
+		} else if (nextInstruction instanceof LDIV){
+			combinedValue = first.longValue() / second.longValue();
+		}
+
+		else throw new IllegalStateException("Unrecognised Arithmetic Operation");
+        return combinedValue;
+
+	}
+}
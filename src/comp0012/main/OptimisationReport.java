@@ -0,0 +1,273 @@
+package comp0012.main;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.Code;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Machine readable summary of an optimiser run: what every pass did to each method and class, how long it took,
+ * the totals over the whole corpus and the slowest methods. Written by Main as JSON or CSV.
+ */
+class OptimisationReport {
+
+    private static final String[] COLUMNS = {"scope", "class", "method", "hot", "instructionsBefore", "instructionsAfter",
+            "codeBytesBefore", "codeBytesAfter", "constantsFolded", "branchesRemoved", "deadStoresEliminated",
+            "subexpressionsEliminated", "peepholeIterations", "timeMicros"};
+
+    /**
+     * Counters for one method. The before/after sizes come from the Code attribute, so they are what ends up in
+     * the class file.
+     */
+    static class MethodStats {
+        final String className;
+        final String name; // method name followed by its signature, i.e. methodOne()I.
+
+        int instructionsBefore;
+        int instructionsAfter;
+        int codeBytesBefore;
+        int codeBytesAfter;
+        int branchesBefore;
+        int branchesRemoved;
+        int constantsFolded;
+        int deadStoresEliminated;
+        int subexpressionsEliminated;
+        int peepholeIterations;
+        long timeNanos;
+        boolean hot = true; // false if the profile marked the method as cold, so it only got the fast passes.
+
+        MethodStats(String className, String name) {
+            this.className = className;
+            this.name = name;
+        }
+
+        void recordBefore(Code code) {
+            if (code == null) return;
+            codeBytesBefore = code.getCode().length;
+            int[] counts = countInstructions(code.getCode());
+            instructionsBefore = counts[0];
+            branchesBefore = counts[1];
+        }
+
+        void recordAfter(Code code) {
+            if (code == null) return;
+            codeBytesAfter = code.getCode().length;
+            int[] counts = countInstructions(code.getCode());
+            instructionsAfter = counts[0];
+            // threaded jumps keep their branch, so only branches that are gone from the code count as removed.
+            branchesRemoved = Math.max(0, branchesBefore - counts[1]);
+        }
+
+        // walks the raw bytecode rather than decoding an InstructionList, since every method is counted.
+        // returns {instructions, branches}, where RET is not a branch (as in BCEL).
+        private static int[] countInstructions(byte[] bytecode) {
+            int instructions = 0;
+            int branches = 0;
+            for (int pc = 0; pc < bytecode.length; pc += CandidateScanner.getLength(bytecode, pc)) {
+                int opcode = bytecode[pc] & 0xff;
+                instructions++;
+                if (CandidateScanner.isBranch(opcode) && opcode != Constants.RET) branches++;
+            }
+            return new int[]{instructions, branches};
+        }
+    }
+
+    /**
+     * The methods of one class, plus the time spent on the whole class (frames, compaction and writing included).
+     */
+    static class ClassStats {
+        final String name;
+        final List<MethodStats> methods = new ArrayList<MethodStats>();
+        long timeNanos;
+
+        ClassStats(String name) {
+            this.name = name;
+        }
+    }
+
+    private final List<ClassStats> classes = new ArrayList<ClassStats>();
+    private final int slowestCount;
+
+    /**
+     * @param slowestCount how many of the slowest methods to list.
+     */
+    OptimisationReport(int slowestCount) {
+        this.slowestCount = slowestCount;
+    }
+
+    void add(ClassStats stats) {
+        if (stats != null) classes.add(stats);
+    }
+
+    /** Writes the report, as CSV if the file name ends in .csv and as JSON otherwise.
+     *
+     * @param reportPath where to write the report.
+     */
+    void write(String reportPath) throws IOException {
+        PrintWriter out = new PrintWriter(new FileWriter(reportPath));
+        try {
+            if (reportPath.toLowerCase().endsWith(".csv")) writeCsv(out);
+            else writeJson(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    // <================================================== JSON ======================================================>
+
+    private void writeJson(PrintWriter out) {
+        out.println("{");
+        out.println("  \"totals\": " + toJson(getCorpusTotals(), null) + ",");
+
+        out.println("  \"slowestMethods\": [");
+        List<MethodStats> slowest = getSlowestMethods();
+        for (int index = 0; index < slowest.size(); index++) {
+            out.print("    " + toJson(slowest.get(index), slowest.get(index).className));
+            out.println(index < slowest.size() - 1 ? "," : "");
+        }
+        out.println("  ],");
+
+        out.println("  \"classes\": [");
+        for (int classIndex = 0; classIndex < classes.size(); classIndex++) {
+            ClassStats classStats = classes.get(classIndex);
+            MethodStats totals = sum(classStats.methods, classStats.timeNanos);
+            out.println("    {");
+            out.println("      \"class\": " + quote(classStats.name) + ",");
+            out.println("      \"totals\": " + toJson(totals, null) + ",");
+            out.println("      \"methods\": [");
+            for (int index = 0; index < classStats.methods.size(); index++) {
+                out.print("        " + toJson(classStats.methods.get(index), null));
+                out.println(index < classStats.methods.size() - 1 ? "," : "");
+            }
+            out.println("      ]");
+            out.println("    }" + (classIndex < classes.size() - 1 ? "," : ""));
+        }
+        out.println("  ]");
+        out.println("}");
+    }
+
+    /** Formats the counters of a method (or a sum of methods) as a single line JSON object.
+     *
+     * @param stats the counters.
+     * @param className class of the method, only written for the slowest methods list.
+     * @return the JSON object.
+     */
+    private static String toJson(MethodStats stats, String className) {
+        StringBuilder json = new StringBuilder("{");
+        if (className != null) json.append("\"class\": ").append(quote(className)).append(", ");
+        if (stats.name != null) {
+            json.append("\"method\": ").append(quote(stats.name)).append(", \"hot\": ").append(stats.hot).append(", ");
+        }
+        String[] values = getValues(stats);
+        for (int index = 4; index < COLUMNS.length; index++) {
+            json.append('"').append(COLUMNS[index]).append("\": ").append(values[index - 4]);
+            if (index < COLUMNS.length - 1) json.append(", ");
+        }
+        return json.append('}').toString();
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    // <=================================================== CSV ======================================================>
+
+    // one row per method and class, one for the corpus, then the slowest methods again with the scope "slowest".
+    private void writeCsv(PrintWriter out) {
+        out.println(join(COLUMNS));
+        for (ClassStats classStats : classes) {
+            for (MethodStats method : classStats.methods) out.println(toCsv("method", classStats.name, method));
+            out.println(toCsv("class", classStats.name, sum(classStats.methods, classStats.timeNanos)));
+        }
+        out.println(toCsv("corpus", "", getCorpusTotals()));
+        for (MethodStats method : getSlowestMethods()) out.println(toCsv("slowest", method.className, method));
+    }
+
+    private static String toCsv(String scope, String className, MethodStats stats) {
+        String[] row = new String[COLUMNS.length];
+        row[0] = scope;
+        row[1] = className;
+        row[2] = stats.name != null ? stats.name : "";
+        row[3] = stats.name != null ? String.valueOf(stats.hot) : "";
+        String[] values = getValues(stats);
+        System.arraycopy(values, 0, row, 4, values.length);
+        return join(row);
+    }
+
+    private static String join(String[] fields) {
+        StringBuilder line = new StringBuilder();
+        for (int index = 0; index < fields.length; index++) {
+            if (index > 0) line.append(',');
+            String field = fields[index];
+            if (field.contains(",") || field.contains("\"")) field = "\"" + field.replace("\"", "\"\"") + "\"";
+            line.append(field);
+        }
+        return line.toString();
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    // the counter values, in the same order as the counter columns (everything after "hot").
+    private static String[] getValues(MethodStats stats) {
+        return new String[] {
+                String.valueOf(stats.instructionsBefore), String.valueOf(stats.instructionsAfter),
+                String.valueOf(stats.codeBytesBefore), String.valueOf(stats.codeBytesAfter),
+                String.valueOf(stats.constantsFolded), String.valueOf(stats.branchesRemoved),
+                String.valueOf(stats.deadStoresEliminated), String.valueOf(stats.subexpressionsEliminated),
+                String.valueOf(stats.peepholeIterations),
+                String.valueOf(stats.timeNanos / 1000)
+        };
+    }
+
+    /** Adds the counters of the methods together.
+     *
+     * @param methods the methods to add up.
+     * @param timeNanos time of the whole class/corpus, which is more than the time of its methods.
+     * @return the totals, without a class or method name.
+     */
+    private static MethodStats sum(List<MethodStats> methods, long timeNanos) {
+        MethodStats total = new MethodStats(null, null);
+        for (MethodStats method : methods) {
+            total.instructionsBefore += method.instructionsBefore;
+            total.instructionsAfter += method.instructionsAfter;
+            total.codeBytesBefore += method.codeBytesBefore;
+            total.codeBytesAfter += method.codeBytesAfter;
+            total.branchesBefore += method.branchesBefore;
+            total.branchesRemoved += method.branchesRemoved;
+            total.constantsFolded += method.constantsFolded;
+            total.deadStoresEliminated += method.deadStoresEliminated;
+            total.subexpressionsEliminated += method.subexpressionsEliminated;
+            total.peepholeIterations += method.peepholeIterations;
+        }
+        total.timeNanos = timeNanos;
+        return total;
+    }
+
+    private MethodStats getCorpusTotals() {
+        List<MethodStats> allMethods = new ArrayList<MethodStats>();
+        long timeNanos = 0;
+        for (ClassStats classStats : classes) {
+            allMethods.addAll(classStats.methods);
+            timeNanos += classStats.timeNanos;
+        }
+        return sum(allMethods, timeNanos);
+    }
+
+    private List<MethodStats> getSlowestMethods() {
+        List<MethodStats> methods = new ArrayList<MethodStats>();
+        for (ClassStats classStats : classes) methods.addAll(classStats.methods);
+        Collections.sort(methods, new Comparator<MethodStats>() {
+            @Override
+            public int compare(MethodStats first, MethodStats second) {
+                return Long.compare(second.timeNanos, first.timeNanos);
+            }
+        });
+        return methods.subList(0, Math.min(slowestCount, methods.size()));
+    }
+}
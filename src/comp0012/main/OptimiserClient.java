@@ -0,0 +1,96 @@
+package comp0012.main;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.*;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Paths;
+
+/**
+ * Thin client for OptimiserDaemon, called by the build instead of Main. It sends one request to the daemon and
+ * prints the answer. If no daemon is running, the classes are optimised in this JVM by Main as usual.
+ */
+public class OptimiserClient {
+
+    @Option(name="-socket", usage="Path of the Unix-domain socket of the optimiser daemon")
+    private String socket = OptimiserDaemon.DEFAULT_SOCKET;
+
+    @Option(name="-in", usage="Root directory of the input classfiles")
+    private String inputRoot;
+
+    @Option(name="-out", usage="Root directory where optimised classfiles will be stored")
+    private String outputRoot;
+
+    @Option(name="-ping", usage="Check that the daemon is running")
+    private boolean ping;
+
+    @Option(name="-shutdown", usage="Stop the daemon")
+    private boolean shutdown;
+
+    public static void main(String args[]) throws IOException {
+        OptimiserClient client = new OptimiserClient();
+        CmdLineParser parser = new CmdLineParser(client);
+        try {
+            parser.parseArgument(args);
+            if (!client.ping && !client.shutdown && (client.inputRoot == null || client.outputRoot == null)) {
+                throw new CmdLineException(parser, "Either -ping, -shutdown or both -in and -out are needed");
+            }
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(-1);
+        }
+        System.exit(client.run());
+    }
+
+    /** Sends the request to the daemon.
+     *
+     * @return the exit code, 0 if the request succeeded.
+     */
+    private int run() throws IOException {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(Paths.get(socket)));
+        } catch (IOException e) {
+            // no socket file, or one left by a daemon that is not running any more.
+            if (ping || shutdown) {
+                System.out.println("[CLIENT] No optimiser daemon on " + socket + ".");
+                return ping ? 1 : 0;
+            }
+            System.out.println("[CLIENT] No optimiser daemon on " + socket + ", optimising in this JVM.");
+            Main.main(new String[] {"-in", inputRoot, "-out", outputRoot});
+            return 0;
+        }
+
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            if (ping) {
+                out.writeUTF(OptimiserDaemon.PING);
+            } else if (shutdown) {
+                out.writeUTF(OptimiserDaemon.SHUTDOWN);
+            } else {
+                // the daemon has its own working directory, so the roots are sent as absolute paths.
+                out.writeUTF(OptimiserDaemon.OPTIMISE_DIRECTORY);
+                out.writeUTF(new File(inputRoot).getAbsolutePath());
+                out.writeUTF(new File(outputRoot).getAbsolutePath());
+            }
+            out.flush();
+
+            String status = in.readUTF();
+            String message = in.readUTF();
+            if (OptimiserDaemon.OK.equals(status)) {
+                System.out.println("[CLIENT] " + message);
+                return 0;
+            }
+            System.err.println("[CLIENT] Optimiser daemon failed: " + message);
+            return 1;
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+package comp0012.main;
+
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resident optimiser that keeps the JVM and the JIT compiled optimiser warm between builds.
+ * It listens on a Unix-domain socket and runs every request on a shared pool of workers (see OptimiserClient).
+ * Requests can write any file the daemon can, so only its own user may connect: the socket is created in a
+ * directory only that user can enter (made if missing) and is itself readable and writable by that user alone.
+ *
+ * Each worker thread gets its own IsolatedClassLoader with its own BCEL and optimiser, which it keeps for as long
+ * as the daemon runs. The caches of that optimiser only last for one request: a worker clears them when it picks up
+ * a task of a request it has not worked on yet.
+ *
+ * Protocol (one request per connection, DataInput/DataOutput encoding):
+ *   PING                                  -> OK, message
+ *   SHUTDOWN                              -> OK, message
+ *   OPTIMISE_DIRECTORY, inputRoot, outputRoot -> OK or ERROR, message
+ *   OPTIMISE_CLASS, length, class bytes   -> OK, length, optimised bytes | ERROR, message
+ */
+public class OptimiserDaemon {
+
+    static final String DEFAULT_SOCKET = new File(System.getProperty("user.home"), ".comp0012-optimiser/daemon.sock").getPath();
+
+    // larger OPTIMISE_CLASS requests are refused before anything is allocated for them.
+    static final int MAX_CLASS_BYTES = 64 * 1024 * 1024;
+
+    static final String PING = "PING";
+    static final String SHUTDOWN = "SHUTDOWN";
+    static final String OPTIMISE_DIRECTORY = "OPTIMISE_DIRECTORY";
+    static final String OPTIMISE_CLASS = "OPTIMISE_CLASS";
+    static final String OK = "OK";
+    static final String ERROR = "ERROR";
+
+    @Option(name="-socket", usage="Path of the Unix-domain socket to listen on")
+    private String socket = DEFAULT_SOCKET;
+
+    @Option(name="-workers", usage="Number of classes optimised at the same time")
+    private int workerCount = Runtime.getRuntime().availableProcessors();
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private ExecutorService workers;
+    private ExecutorService connections;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running = true;
+
+    public static void main(String args[]) throws IOException {
+        OptimiserDaemon daemon = new OptimiserDaemon();
+        CmdLineParser parser = new CmdLineParser(daemon);
+        try {
+            parser.parseArgument(args);
+        } catch (CmdLineException e) {
+            System.err.println(e.getMessage());
+            parser.printUsage(System.err);
+            System.exit(-1);
+        }
+        daemon.serve();
+    }
+
+    /** Accepts requests until a SHUTDOWN request arrives. */
+    void serve() throws IOException {
+        workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            private int created = 0;
+
+            @Override
+            public synchronized Thread newThread(Runnable task) {
+                return new Thread(task, "optimiser-worker-" + created++);
+            }
+        });
+        connections = Executors.newCachedThreadPool();
+        Path socketPath = Paths.get(socket).toAbsolutePath();
+        serverChannel = bind(socketPath);
+        System.out.println("[DAEMON] Listening on " + socketPath + " with " + workerCount + " workers.");
+
+        try {
+            while (running) {
+                final SocketChannel channel;
+                try {
+                    channel = serverChannel.accept();
+                } catch (ClosedChannelException e) {
+                    if (running) throw e;
+                    break; // closed by SHUTDOWN.
+                }
+                connections.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        handleConnection(channel);
+                    }
+                });
+            }
+        } finally {
+            connections.shutdown();
+            workers.shutdown();
+            serverChannel.close();
+            Files.deleteIfExists(socketPath);
+        }
+        System.out.println("[DAEMON] Stopped.");
+    }
+
+    /** Opens the socket only the user running the daemon can connect to.
+     *
+     * @param socketPath where the socket file is created.
+     * @return the bound channel.
+     * @throws IOException if another daemon is already listening there, or the socket cannot be created.
+     */
+    private static ServerSocketChannel bind(Path socketPath) throws IOException {
+        Path directory = socketPath.getParent();
+        if (!Files.isDirectory(directory)) {
+            Set<PosixFilePermission> ownerOnly = PosixFilePermissions.fromString("rwx------");
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(ownerOnly));
+        }
+        if (Files.exists(socketPath)) {
+            if (isListening(socketPath)) throw new IOException("An optimiser daemon is already listening on " + socketPath);
+            Files.delete(socketPath); // left by a daemon that did not stop cleanly.
+        }
+
+        ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        channel.bind(UnixDomainSocketAddress.of(socketPath));
+        Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+        return channel;
+    }
+
+    // true if a daemon accepts connections on the socket.
+    private static boolean isListening(Path socketPath) {
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socketPath)).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // <================================================ Requests ====================================================>
+
+    private void handleConnection(SocketChannel channel) {
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            try {
+                handleRequest(in, out);
+            } catch (Exception e) {
+                out.writeUTF(ERROR);
+                out.writeUTF(String.valueOf(e.getMessage()));
+            }
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("[DAEMON] Connection failed: " + e.getMessage());
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // the client has gone already.
+            }
+        }
+    }
+
+    private void handleRequest(DataInputStream in, DataOutputStream out) throws Exception {
+        String command = in.readUTF();
+        if (PING.equals(command)) {
+            out.writeUTF(OK);
+            out.writeUTF("Optimiser daemon running with " + workerCount + " workers.");
+        } else if (SHUTDOWN.equals(command)) {
+            out.writeUTF(OK);
+            out.writeUTF("Optimiser daemon stopping.");
+            running = false;
+            serverChannel.close();
+        } else if (OPTIMISE_DIRECTORY.equals(command)) {
+            String result = optimiseDirectory(in.readUTF(), in.readUTF());
+            out.writeUTF(OK);
+            out.writeUTF(result);
+        } else if (OPTIMISE_CLASS.equals(command)) {
+            int length = in.readInt();
+            if (length < 0 || length > MAX_CLASS_BYTES) {
+                throw new IllegalArgumentException("Class of " + length + " bytes, at most " + MAX_CLASS_BYTES + " are accepted");
+            }
+            byte[] classBytes = new byte[length];
+            in.readFully(classBytes);
+            byte[] optimised = optimiseClass(classBytes);
+            out.writeUTF(OK);
+            out.writeInt(optimised.length);
+            out.write(optimised);
+        } else {
+            throw new IllegalArgumentException("Unknown request " + command);
+        }
+    }
+
+    /** Optimises every class file under the input root into the same place under the output root, like Main.
+     *
+     * @return a summary of the request.
+     * @throws IllegalStateException if any class failed, after every other class has been written.
+     */
+    private String optimiseDirectory(String inputRoot, final String outputRoot) throws Exception {
+        long startTime = System.nanoTime();
+        final long request = requestCount.incrementAndGet();
+        final Path inputPath = Paths.get(inputRoot);
+        final List<Path> classFiles = new ArrayList<Path>();
+        Files.walkFileTree(inputPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (file.toString().endsWith(".class") && !Main.isOptimiserClass(inputPath, file)) classFiles.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        List<Future<?>> results = new ArrayList<Future<?>>();
+        for (final Path classFile : classFiles) {
+            final Path outputFile = Paths.get(outputRoot, inputPath.relativize(classFile).toString());
+            results.add(workers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    Files.createDirectories(outputFile.getParent());
+                    IsolatedOptimiser optimiser = WORKER_OPTIMISER.get();
+                    optimiser.startRequest(request);
+                    optimiser.optimise(classFile.toString(), outputFile.toAbsolutePath().toString());
+                    return null;
+                }
+            }));
+        }
+
+        List<String> failures = new ArrayList<String>();
+        for (int index = 0; index < results.size(); index++) {
+            try {
+                results.get(index).get();
+            } catch (ExecutionException e) {
+                failures.add(classFiles.get(index) + ": " + getRootCause(e));
+            }
+        }
+        long millis = (System.nanoTime() - startTime) / 1000000;
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException(failures.size() + " of " + classFiles.size() + " classes failed, " + failures);
+        }
+        return "Optimised " + classFiles.size() + " classes in " + millis + " ms.";
+    }
+
+    private byte[] optimiseClass(final byte[] classBytes) throws Exception {
+        final long request = requestCount.incrementAndGet();
+        Future<byte[]> result = workers.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                IsolatedOptimiser optimiser = WORKER_OPTIMISER.get();
+                optimiser.startRequest(request);
+                return optimiser.optimise(classBytes);
+            }
+        });
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(getRootCause(e));
+        }
+    }
+
+    private static String getRootCause(Throwable throwable) {
+        while (throwable.getCause() != null) throwable = throwable.getCause();
+        return throwable.toString();
+    }
+
+    // <============================================= Worker Optimisers ==============================================>
+
+    // every worker thread builds its own isolated optimiser the first time it runs a task, and keeps it warm.
+    private static final ThreadLocal<IsolatedOptimiser> WORKER_OPTIMISER = new ThreadLocal<IsolatedOptimiser>() {
+        @Override
+        protected IsolatedOptimiser initialValue() {
+            try {
+                return new IsolatedOptimiser();
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot load the optimiser for a worker", e);
+            }
+        }
+    };
+
+    /**
+     * A ConstantFolder (and BCEL) loaded by a class loader of its own, so its static state is private to one thread.
+     * It is called through reflection, as its classes are not the ones loaded by the daemon.
+     */
+    private static class IsolatedOptimiser {
+        private final Constructor<?> fromPath;
+        private final Constructor<?> fromBytes;
+        private final Method writeFile;
+        private final Method writeStream;
+        private final Method clearCaches;
+        private long request = -1; // the request of the last task, only touched by the owning thread.
+
+        IsolatedOptimiser() throws Exception {
+            Class<?> folderClass = new IsolatedClassLoader().loadClass(ConstantFolder.class.getName());
+            fromPath = folderClass.getConstructor(String.class);
+            fromBytes = folderClass.getConstructor(byte[].class);
+            writeFile = folderClass.getMethod("write", String.class);
+            writeStream = folderClass.getMethod("write", OutputStream.class);
+            clearCaches = folderClass.getMethod("clearCaches");
+        }
+
+        // clears the caches left by an earlier request before the first task of a new one.
+        void startRequest(long request) throws Exception {
+            if (this.request == request) return;
+            this.request = request;
+            invoke(clearCaches, null);
+        }
+
+        void optimise(String classFilePath, String optimisedFilePath) throws Exception {
+            invoke(writeFile, fromPath.newInstance(classFilePath), optimisedFilePath);
+        }
+
+        byte[] optimise(byte[] classBytes) throws Exception {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            invoke(writeStream, fromBytes.newInstance((Object) classBytes), out);
+            return out.toByteArray();
+        }
+
+        private static void invoke(Method method, Object target, Object... arguments) throws Exception {
+            try {
+                method.invoke(target, arguments);
+            } catch (InvocationTargetException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package comp0012.main;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Optimises the methods of one large class on several threads. The methods are split into contiguous chunks, and
+ * each chunk is optimised by a worker thread with its own copy of BCEL (see IsolatedClassLoader), starting from the
+ * original class file. The workers send back class files that hold only their chunk, which are merged into the
+ * shared ClassGen in method order, so the result does not depend on which worker finished first.
+ *
+ * A worker adds its new constants after the entries of the original pool, so only those entries have to be added to
+ * the shared pool again; everything else has the same index in every copy of the pool.
+ */
+class ParallelMethodOptimizer {
+
+    // below this many methods, loading the workers costs more than it saves.
+    static final int MIN_METHODS = 200;
+
+    private static ExecutorService workers;
+    private static int workerCount;
+
+    // every worker thread loads its own optimiser the first time it runs a chunk, and keeps it warm.
+    private static final ThreadLocal<java.lang.reflect.Method> WORKER_ENTRY = new ThreadLocal<java.lang.reflect.Method>() {
+        @Override
+        protected java.lang.reflect.Method initialValue() {
+            try {
+                Class<?> workerClass = new IsolatedClassLoader().loadClass(ParallelMethodOptimizer.class.getName());
+                java.lang.reflect.Method entry = workerClass.getDeclaredMethod("optimizeChunk",
+                        byte[].class, int[].class, boolean[].class, long[][].class);
+                entry.setAccessible(true);
+                return entry;
+            } catch (Exception e) {
+                throw new IllegalStateException("Cannot load the optimiser for a worker", e);
+            }
+        }
+    };
+
+    // what a worker reports for each method of its chunk, in this order.
+    private static final int CHANGED = 0;
+    private static final int CONSTANTS_FOLDED = 1;
+    private static final int DEAD_STORES_ELIMINATED = 2;
+    private static final int PEEPHOLE_ITERATIONS = 3;
+    private static final int TIME_NANOS = 4;
+    private static final int SUBEXPRESSIONS_ELIMINATED = 5;
+
+    private final JavaClass original;
+    private final ClassGen cgen;
+    private final ConstantPoolGen cpgen;
+    private final List<OptimisationReport.MethodStats> methodStats;
+    private final int originalPoolSize;
+
+    /**
+     * @param original the class as it was read, which the workers start from.
+     * @param cgen the class the optimised methods are merged into, still holding the original methods.
+     * @param methodStats counters of every method, by position. The hot flags tell which passes to run.
+     */
+    ParallelMethodOptimizer(JavaClass original, ClassGen cgen, List<OptimisationReport.MethodStats> methodStats) {
+        this.original = original;
+        this.cgen = cgen;
+        this.cpgen = cgen.getConstantPool();
+        this.methodStats = methodStats;
+        this.originalPoolSize = original.getConstantPool().getLength();
+    }
+
+    /** Checks if a class is big enough to be split between threads.
+     *
+     * @param threads number of threads that may be used.
+     * @param methods the methods of the class.
+     * @return true if the class should be optimised by run().
+     */
+    static boolean isWorthwhile(int threads, Method[] methods) {
+        if (threads < 2) return false;
+        int methodsWithCode = 0;
+        for (Method method : methods) {
+            if (method.getCode() != null) methodsWithCode++;
+        }
+        return methodsWithCode >= MIN_METHODS;
+    }
+
+    /** Optimises every method and merges the results into the class.
+     *
+     * @param threads number of chunks to split the methods into.
+     * @param unchanged filled in with true for every method no pass changed, by position.
+     */
+    void run(int threads, boolean[] unchanged) {
+        final byte[] classBytes = original.getBytes();
+        int methodCount = methodStats.size();
+        int chunkSize = (methodCount + threads - 1) / threads;
+
+        List<int[]> chunks = new ArrayList<int[]>();
+        List<long[][]> chunkCounters = new ArrayList<long[][]>();
+        List<Future<byte[]>> results = new ArrayList<Future<byte[]>>();
+        ExecutorService pool = getWorkers(threads);
+        for (int start = 0; start < methodCount; start += chunkSize) {
+            final int[] positions = new int[Math.min(chunkSize, methodCount - start)];
+            final boolean[] hot = new boolean[positions.length];
+            final long[][] counters = new long[positions.length][];
+            for (int index = 0; index < positions.length; index++) {
+                positions[index] = start + index;
+                hot[index] = methodStats.get(start + index).hot;
+            }
+            chunks.add(positions);
+            chunkCounters.add(counters);
+            results.add(pool.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws Exception {
+                    return invokeWorker(classBytes, positions, hot, counters);
+                }
+            }));
+        }
+
+        // merged in chunk order, which is method order, however the workers were scheduled.
+        for (int chunk = 0; chunk < chunks.size(); chunk++) {
+            merge(getResult(results.get(chunk)), chunks.get(chunk), chunkCounters.get(chunk), unchanged);
+        }
+    }
+
+    // <================================================== Merging ===================================================>
+
+    private void merge(byte[] chunkBytes, int[] positions, long[][] counters, boolean[] unchanged) {
+        JavaClass chunkClass = parse(chunkBytes);
+        ConstantPoolGen chunkPool = new ConstantPoolGen(chunkClass.getConstantPool());
+        Method[] chunkMethods = chunkClass.getMethods();
+
+        for (int index = 0; index < positions.length; index++) {
+            OptimisationReport.MethodStats stats = methodStats.get(positions[index]);
+            stats.constantsFolded = (int) counters[index][CONSTANTS_FOLDED];
+            stats.deadStoresEliminated = (int) counters[index][DEAD_STORES_ELIMINATED];
+            stats.peepholeIterations = (int) counters[index][PEEPHOLE_ITERATIONS];
+            stats.subexpressionsEliminated = (int) counters[index][SUBEXPRESSIONS_ELIMINATED];
+            stats.timeNanos = counters[index][TIME_NANOS];
+
+            unchanged[positions[index]] = counters[index][CHANGED] == 0;
+            if (unchanged[positions[index]]) continue;
+            // entries of the original pool keep their index, only the constants the worker added are looked up.
+            cgen.setMethodAt(ConstantPoolRebinder.rebind(chunkMethods[index], cgen.getClassName(), chunkPool, cpgen,
+                    originalPoolSize), positions[index]);
+        }
+    }
+
+    // <================================================== Workers ===================================================>
+
+    /** Entry point of the workers, called inside a worker's own class loader, so nothing but JDK types goes in or out.
+     *
+     * @param classBytes the original class file.
+     * @param positions positions of the methods to optimise.
+     * @param hot whether each of those methods gets every pass.
+     * @param counters filled in with the counters of each method (CHANGED, CONSTANTS_FOLDED...).
+     * @return a class file that holds the optimised chunk of methods, in the order of the positions.
+     */
+    private static byte[] optimizeChunk(byte[] classBytes, int[] positions, boolean[] hot, long[][] counters) {
+        ClassGen classGen = new ClassGen(parse(classBytes));
+        Method[] chunkMethods = new Method[positions.length];
+        for (int index = 0; index < positions.length; index++) {
+            Method method = classGen.getMethodAt(positions[index]);
+            OptimisationReport.MethodStats stats = new OptimisationReport.MethodStats(classGen.getClassName(), method.getName());
+            long startTime = System.nanoTime();
+            chunkMethods[index] = MethodMemo.optimize(classGen, method, stats, hot[index], false);
+            counters[index] = new long[] {chunkMethods[index] != method ? 1 : 0, stats.constantsFolded,
+                    stats.deadStoresEliminated, stats.peepholeIterations, System.nanoTime() - startTime,
+                    stats.subexpressionsEliminated};
+        }
+        classGen.setMethods(chunkMethods);
+        return classGen.getJavaClass().getBytes();
+    }
+
+    private static byte[] invokeWorker(byte[] classBytes, int[] positions, boolean[] hot, long[][] counters) throws Exception {
+        try {
+            return (byte[]) WORKER_ENTRY.get().invoke(null, classBytes, positions, hot, counters);
+        } catch (InvocationTargetException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    // the pool is shared by every class of the run, and grows if a later class asks for more threads.
+    private static synchronized ExecutorService getWorkers(int threads) {
+        if (workers == null || workerCount < threads) {
+            if (workers != null) workers.shutdown();
+            workerCount = threads;
+            workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                private int created = 0;
+
+                @Override
+                public synchronized Thread newThread(Runnable task) {
+                    Thread thread = new Thread(task, "method-optimizer-" + created++);
+                    thread.setDaemon(true); // the run ends when Main is done, without shutting the pool down.
+                    return thread;
+                }
+            });
+        }
+        return workers;
+    }
+
+    private static byte[] getResult(Future<byte[]> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Method optimisation failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while optimising methods", e);
+        }
+    }
+
+    private static JavaClass parse(byte[] classBytes) {
+        try {
+            return new ClassParser(new ByteArrayInputStream(classBytes), "<bytes>").parse();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read a class file written by the optimiser", e);
+        }
+    }
+}
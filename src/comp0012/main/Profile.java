@@ -0,0 +1,67 @@
+package comp0012.main;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A profile written by classes instrumented with Main -instrument (see ProfileRuntime). The weight of a method is
+ * the number of times it was entered plus the number of backward branches it took, i.e. roughly how much of the
+ * run was spent in it. Methods at or above the hot threshold get every pass, the rest only the fast ones.
+ */
+class Profile {
+
+    private final Map<String, Long> weights = new HashMap<String, Long>(); // "class TAB method" -> weight.
+    private final long hotThreshold;
+
+    private Profile(long hotThreshold) {
+        this.hotThreshold = hotThreshold;
+    }
+
+    /** Reads a profile file, adding up the entry and backward branch counters of each method.
+     *
+     * @param profilePath the profile to read.
+     * @param hotThreshold smallest weight of a hot method.
+     * @return the profile.
+     */
+    static Profile read(String profilePath, long hotThreshold) throws IOException {
+        Profile profile = new Profile(hotThreshold);
+        BufferedReader in = new BufferedReader(new FileReader(profilePath));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 3) continue;
+                String key = fields[1] + "\t" + getMethodName(fields[2]);
+                Long weight = profile.weights.get(key);
+                profile.weights.put(key, (weight != null ? weight : 0L) + Long.parseLong(fields[0]));
+            }
+        } finally {
+            in.close();
+        }
+        return profile;
+    }
+
+    /** Checks if a method ran often enough to be worth the expensive passes.
+     *
+     * @param className name of the class, i.e. comp0012.target.SimpleFolding.
+     * @param method method name followed by its signature, i.e. simple()V.
+     * @return true if the method is hot, false if it is cold or was never run.
+     */
+    boolean isHot(String className, String method) {
+        Long weight = weights.get(className + "\t" + method);
+        return weight != null && weight >= hotThreshold;
+    }
+
+    // backward branch counters are called "method@pc", entry counters are just the method.
+    private static String getMethodName(String counterName) {
+        int at = counterName.lastIndexOf('@');
+        if (at < 0 || at == counterName.length() - 1) return counterName;
+        for (int index = at + 1; index < counterName.length(); index++) {
+            if (!Character.isDigit(counterName.charAt(index))) return counterName;
+        }
+        return counterName.substring(0, at);
+    }
+}
@@ -0,0 +1,184 @@
+package comp0012.main;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * First phase of the profile-guided mode: writes a copy of the class where every method bumps a counter when it is
+ * entered and before each backward branch. The counters live in one long[] per class, handed out by ProfileRuntime
+ * and cached in a synthetic static field, so a hit costs a static call (inlined by the JIT) and an array increment.
+ */
+class ProfileInstrumenter {
+
+    static final String COUNTERS_FIELD = "$profileCounters";
+    static final String COUNTERS_METHOD = "$profileCounters";
+
+    private static final ArrayType COUNTERS_TYPE = new ArrayType(Type.LONG, 1);
+    private static final int MAX_UTF8_LENGTH = 65535; // counter names are passed as one String constant.
+
+    // shared by every class, so each superclass is only read once per run.
+    private static final ClassHierarchy HIERARCHY = new ClassHierarchy();
+
+    private JavaClass original;
+    private ClassGen cgen;
+    private ConstantPoolGen cpgen;
+    private final List<String> counterNames = new ArrayList<String>();
+
+    ProfileInstrumenter(String classFilePath) {
+        try {
+            this.original = new ClassParser(classFilePath).parse();
+            HIERARCHY.addSearchRoot(ConstantFolder.getClassRoot(classFilePath, original.getClassName()));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Forgets the directories and superclasses of the classes instrumented so far. */
+    static void clearHierarchy() {
+        HIERARCHY.clear();
+    }
+
+    /** Adds the counters to every concrete method. Interfaces are left alone, they cannot hold the counter field.
+     *
+     * @return the instrumented class, or the original class if it cannot be instrumented.
+     */
+    JavaClass instrument() {
+        if (original.isInterface()) return original;
+
+        cgen = new ClassGen(original);
+        cpgen = cgen.getConstantPool();
+        for (Method method : cgen.getMethods()) {
+            if (method.getCode() != null) instrumentMethod(method);
+        }
+
+        String names = join(counterNames);
+        if (counterNames.isEmpty() || getUtf8Length(names) > MAX_UTF8_LENGTH) return original;
+        addCounterAccessor(names);
+        String failure = StackMapFrameBuilder.rebuildFrames(cgen, HIERARCHY);
+        if (failure != null) {
+            // its methods are then missing from the profile, so they are treated as cold.
+            System.out.println("[INSTRUMENT] " + cgen.getClassName() + " left uninstrumented: " + failure);
+            return original;
+        }
+        return cgen.getJavaClass();
+    }
+
+    // the file is only created once the class has been instrumented, so a failure leaves no truncated class behind.
+    void write(String instrumentedFilePath) throws IOException {
+        byte[] instrumented = instrument().getBytes();
+        FileOutputStream out = new FileOutputStream(new File(instrumentedFilePath));
+        try {
+            out.write(instrumented);
+        } finally {
+            out.close();
+        }
+    }
+
+    // <============================================= Instrumentation =================================================>
+
+    private void instrumentMethod(Method method) {
+        MethodGen methodGen = new MethodGen(method, cgen.getClassName(), cpgen);
+        InstructionList instructionList = methodGen.getInstructionList();
+        String methodName = method.getName() + method.getSignature();
+
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            if (!isBackwardBranch(handle)) continue;
+            InstructionHandle counter = instructionList.insert(handle, createIncrement(methodName + "@" + handle.getPosition()));
+            // jumps to the branch (i.e. "continue") have to go through the counter as well.
+            for (InstructionTargeter targeter : handle.getTargeters()) {
+                if (targeter instanceof BranchInstruction) targeter.updateTarget(handle, counter);
+            }
+        }
+        // inserted in front of the old start, so a loop that jumps back to the start does not count as an entry.
+        instructionList.insert(createIncrement(methodName));
+
+        instructionList.setPositions(true);
+        methodGen.setMaxStack();
+        methodGen.setMaxLocals();
+        Method instrumented = methodGen.getMethod();
+        // BCEL dumps INVOKEDYNAMIC without its two zero bytes, so the code is encoded again with the full instruction.
+        instrumented.getCode().setCode(InstructionEncoder.getByteCode(instructionList));
+        cgen.replaceMethod(method, instrumented);
+    }
+
+    // $profileCounters()[counter]++
+    private InstructionList createIncrement(String counterName) {
+        int counter = counterNames.size();
+        counterNames.add(counterName);
+
+        InstructionList increment = new InstructionList();
+        increment.append(new INVOKESTATIC(cpgen.addMethodref(cgen.getClassName(), COUNTERS_METHOD, "()" + COUNTERS_TYPE.getSignature())));
+        increment.append(new PUSH(cpgen, counter));
+        increment.append(InstructionConstants.DUP2);
+        increment.append(InstructionConstants.LALOAD);
+        increment.append(InstructionConstants.LCONST_1);
+        increment.append(InstructionConstants.LADD);
+        increment.append(InstructionConstants.LASTORE);
+        return increment;
+    }
+
+    /** Adds the synthetic counter field, and the accessor that registers the counters on first use:
+     * if ($profileCounters == null) $profileCounters = ProfileRuntime.register(className, names);
+     *
+     * @param names the names of every counter, in counter order and separated by new lines.
+     */
+    private void addCounterAccessor(String names) {
+        int access = Constants.ACC_PRIVATE | Constants.ACC_STATIC | Constants.ACC_SYNTHETIC;
+        cgen.addField(new FieldGen(access, COUNTERS_TYPE, COUNTERS_FIELD, cpgen).getField());
+
+        InstructionFactory factory = new InstructionFactory(cgen, cpgen);
+        InstructionList instructionList = new InstructionList();
+        instructionList.append(factory.createGetStatic(cgen.getClassName(), COUNTERS_FIELD, COUNTERS_TYPE));
+        instructionList.append(InstructionConstants.DUP);
+        BranchHandle ifRegistered = instructionList.append(new IFNONNULL(null));
+        instructionList.append(InstructionConstants.POP);
+        instructionList.append(new PUSH(cpgen, cgen.getClassName()));
+        instructionList.append(new PUSH(cpgen, names));
+        instructionList.append(factory.createInvoke(ProfileRuntime.class.getName(), "register", COUNTERS_TYPE,
+                new Type[] {Type.STRING, Type.STRING}, Constants.INVOKESTATIC));
+        instructionList.append(InstructionConstants.DUP);
+        instructionList.append(factory.createPutStatic(cgen.getClassName(), COUNTERS_FIELD, COUNTERS_TYPE));
+        ifRegistered.setTarget(instructionList.append(InstructionConstants.ARETURN));
+
+        MethodGen methodGen = new MethodGen(access, COUNTERS_TYPE, Type.NO_ARGS, null, COUNTERS_METHOD,
+                cgen.getClassName(), instructionList, cpgen);
+        methodGen.setMaxStack();
+        methodGen.setMaxLocals();
+        cgen.addMethod(methodGen.getMethod());
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    private static boolean isBackwardBranch(InstructionHandle handle) {
+        Instruction instruction = handle.getInstruction();
+        if (!(instruction instanceof IfInstruction || instruction instanceof GotoInstruction)) return false;
+        return ((BranchInstruction) instruction).getTarget().getPosition() <= handle.getPosition();
+    }
+
+    private static String join(List<String> names) {
+        StringBuilder joined = new StringBuilder();
+        for (String name : names) {
+            if (joined.length() > 0) joined.append('\n');
+            joined.append(name);
+        }
+        return joined.toString();
+    }
+
+    private static int getUtf8Length(String value) {
+        try {
+            return value.getBytes("UTF-8").length;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
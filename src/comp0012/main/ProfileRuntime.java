@@ -0,0 +1,100 @@
+package comp0012.main;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runtime side of the profile-guided mode. Classes written by Main -instrument call register() once to get their
+ * counter array, and bump the counters inline on method entry and on every backward branch. When the JVM exits the
+ * counts are added to the profile file, so several runs (i.e. one JVM per test class) build up a single profile.
+ *
+ * This class is copied next to the instrumented classes, so it only depends on the JDK. It is also the shutdown
+ * hook, which keeps it to a single class file.
+ */
+public final class ProfileRuntime extends Thread {
+
+    /** System property holding the profile file to write, defaults to DEFAULT_PROFILE in the working directory. */
+    public static final String PROFILE_PROPERTY = "comp0012.profile";
+    public static final String DEFAULT_PROFILE = "optimiser-profile.txt";
+
+    // class name -> counter names / counters, in the same order.
+    private static final Map<String, String[]> NAMES = new LinkedHashMap<String, String[]>();
+    private static final Map<String, long[]> COUNTERS = new LinkedHashMap<String, long[]>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new ProfileRuntime());
+    }
+
+    private ProfileRuntime() {
+        super("comp0012-profile-writer");
+    }
+
+    /** Called by an instrumented class the first time one of its counters is hit.
+     *
+     * @param className name of the instrumented class.
+     * @param counterNames the names of its counters, separated by new lines.
+     * @return the counter array of the class, shared by every caller.
+     */
+    public static synchronized long[] register(String className, String counterNames) {
+        long[] counters = COUNTERS.get(className);
+        if (counters == null) {
+            String[] names = counterNames.split("\n");
+            counters = new long[names.length];
+            NAMES.put(className, names);
+            COUNTERS.put(className, counters);
+        }
+        return counters;
+    }
+
+    @Override
+    public void run() {
+        try {
+            dump(new File(System.getProperty(PROFILE_PROPERTY, DEFAULT_PROFILE)));
+        } catch (IOException e) {
+            System.err.println("Could not write the optimiser profile: " + e.getMessage());
+        }
+    }
+
+    /** Adds the counts of this JVM to the profile file. Every line is "count TAB class TAB counter name".
+     *
+     * @param profileFile the profile to update.
+     */
+    private static synchronized void dump(File profileFile) throws IOException {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        if (profileFile.isFile()) {
+            BufferedReader in = new BufferedReader(new FileReader(profileFile));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0) counts.put(line.substring(tab + 1), Long.parseLong(line.substring(0, tab)));
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        for (Map.Entry<String, long[]> entry : COUNTERS.entrySet()) {
+            String[] names = NAMES.get(entry.getKey());
+            long[] counters = entry.getValue();
+            for (int index = 0; index < counters.length; index++) {
+                String key = entry.getKey() + "\t" + names[index];
+                Long previous = counts.get(key);
+                counts.put(key, (previous != null ? previous : 0L) + counters[index]);
+            }
+        }
+
+        PrintWriter out = new PrintWriter(new FileWriter(profileFile));
+        try {
+            for (Map.Entry<String, Long> entry : counts.entrySet()) out.println(entry.getValue() + "\t" + entry.getKey());
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,649 @@
+package comp0012.main;
+
+import org.apache.bcel.Constants;
+import org.apache.bcel.classfile.*;
+import org.apache.bcel.generic.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Computes the StackMapTable of a method from its final bytecode.
+ * A type inference pass walks the control flow graph (exception handlers included) until the type of every local
+ * and stack slot at every instruction is stable, and a frame is written for each branch target, handler start and
+ * instruction after an unconditional transfer, which is where the type-checking verifier expects one.
+ */
+class StackMapFrameBuilder {
+
+    // how the stack instructions rearrange the popped slots (index 0 is the top), listed from bottom to top.
+    private static final Map<Short, int[]> STACK_SHUFFLES = new HashMap<Short, int[]>();
+    static {
+        STACK_SHUFFLES.put(Constants.POP, new int[] {});
+        STACK_SHUFFLES.put(Constants.POP2, new int[] {});
+        STACK_SHUFFLES.put(Constants.DUP, new int[] {0, 0});
+        STACK_SHUFFLES.put(Constants.DUP_X1, new int[] {0, 1, 0});
+        STACK_SHUFFLES.put(Constants.DUP_X2, new int[] {0, 2, 1, 0});
+        STACK_SHUFFLES.put(Constants.DUP2, new int[] {1, 0, 1, 0});
+        STACK_SHUFFLES.put(Constants.DUP2_X1, new int[] {1, 0, 2, 1, 0});
+        STACK_SHUFFLES.put(Constants.DUP2_X2, new int[] {1, 0, 3, 2, 1, 0});
+        STACK_SHUFFLES.put(Constants.SWAP, new int[] {0, 1});
+    }
+
+    private final String className;
+    private final Method method;
+    private final ConstantPoolGen cpgen;
+    private final ClassHierarchy hierarchy;
+
+    private InstructionList instructionList;
+    private final Map<InstructionHandle, Frame> frames = new HashMap<InstructionHandle, Frame>();
+    private final Deque<InstructionHandle> worklist = new ArrayDeque<InstructionHandle>();
+
+    StackMapFrameBuilder(String className, Method method, ConstantPoolGen cpgen, ClassHierarchy hierarchy) {
+        this.className = className.replace('.', '/');
+        this.method = method;
+        this.cpgen = cpgen;
+        this.hierarchy = hierarchy;
+    }
+
+    /** Recomputes the StackMapTable of every method in the class. The class version is never changed: a class that
+     * uses invokedynamic or other newer constants cannot go back to an older version.
+     *
+     * @param cgen the class, its methods are replaced with copies that carry the new frames.
+     * @param hierarchy used to merge reference types.
+     * @return null if the frames were written, otherwise the reason they could not be, in which case the class is
+     * left exactly as it was.
+     */
+    static String rebuildFrames(ClassGen cgen, ClassHierarchy hierarchy) {
+        return rebuildFrames(cgen, hierarchy, null, null);
+    }
+
+    /** Same as rebuildFrames(cgen, hierarchy), but methods whose code is exactly as it was read keep their frames,
+     * and a method that cannot be described with frames (JSR/RET subroutines, untypeable code) is put back as it was
+     * read, with its original StackMapTable.
+     *
+     * @param cgen the class, its methods are replaced with copies that carry the new frames.
+     * @param hierarchy used to merge reference types.
+     * @param originals the methods as they were read, by position. Their pool indices must still be valid in the
+     *                  pool of the class. Null to leave the whole class as it is when a method fails.
+     * @param unchanged by method position, true if the method still has its original code. Null if none have.
+     * @return null if every method got its frames, otherwise the reasons of the methods that were put back.
+     */
+    static String rebuildFrames(ClassGen cgen, ClassHierarchy hierarchy, Method[] originals, boolean[] unchanged) {
+        if (cgen.getMajor() < Constants.MAJOR_1_6) return null; // older class files never carry frames.
+
+        ConstantPoolGen cpgen = cgen.getConstantPool();
+        Method[] methods = cgen.getMethods();
+        Method[] framedMethods = new Method[methods.length];
+        StringBuilder failures = null;
+        for (int index = 0; index < methods.length; index++) {
+            if (unchanged != null && unchanged[index]) {
+                framedMethods[index] = methods[index];
+                continue;
+            }
+            try {
+                StackMapTable table = new StackMapFrameBuilder(cgen.getClassName(), methods[index], cpgen, hierarchy).build();
+                framedMethods[index] = replaceStackMapTable(methods[index], table, cpgen);
+            } catch (IllegalStateException e) {
+                String failure = methods[index].getName() + ": " + e.getMessage();
+                if (originals == null) return failure; // nothing has been replaced yet.
+                framedMethods[index] = originals[index];
+                failures = failures == null ? new StringBuilder(failure) : failures.append(", ").append(failure);
+            }
+        }
+
+        for (int index = 0; index < methods.length; index++) cgen.setMethodAt(framedMethods[index], index);
+        return failures != null ? failures.toString() : null;
+    }
+
+    /** Copies the method with its old StackMapTable swapped for the given one.
+     *
+     * @param method the method to copy.
+     * @param table the new frames, or null to leave the method without frames.
+     * @param cpgen constant pool of the class.
+     * @return the copy, or the method itself if it has no code.
+     */
+    private static Method replaceStackMapTable(Method method, StackMapTable table, ConstantPoolGen cpgen) {
+        if (method.getCode() == null) return method;
+        Method copy = method.copy(cpgen.getConstantPool());
+        List<Attribute> attributes = new ArrayList<Attribute>();
+        for (Attribute attribute : copy.getCode().getAttributes()) {
+            if (!(attribute instanceof StackMapTable)) attributes.add(attribute);
+        }
+        if (table != null) attributes.add(table);
+        copy.getCode().setAttributes(attributes.toArray(new Attribute[attributes.size()]));
+        return copy;
+    }
+
+    /** Infers the types at every instruction and encodes the frames the verifier needs.
+     *
+     * @return the StackMapTable attribute, or null if the method has no code or needs no frames.
+     * @throws IllegalStateException if the method uses JSR/RET, has unreachable code, or cannot be typed.
+     */
+    StackMapTable build() {
+        Code code = method.getCode();
+        if (code == null) return null;
+        try {
+            instructionList = new InstructionList(code.getCode());
+        } catch (ClassGenException e) {
+            throw new IllegalStateException("Cannot decode the code of " + method.getName(), e);
+        }
+
+        inferTypes(code);
+
+        List<InstructionHandle> frameHandles = findFrameHandles(code);
+        if (frameHandles.isEmpty()) return null;
+        return encodeFrames(frameHandles, getInitialFrame(code.getMaxLocals()));
+    }
+
+    // <============================================= Type Inference ==================================================>
+
+    private void inferTypes(Code code) {
+        Map<InstructionHandle, List<CodeException>> handlers = mapExceptionHandlers(code);
+        mergeInto(instructionList.getStart(), getInitialFrame(code.getMaxLocals()));
+
+        while (!worklist.isEmpty()) {
+            InstructionHandle handle = worklist.pop();
+            Frame in = frames.get(handle);
+
+            // a handler can be entered from any protected instruction, with only the exception on the stack.
+            for (CodeException handler : handlers.get(handle)) {
+                Frame handlerFrame = new Frame(in.locals.clone(), new ArrayList<VerificationType>());
+                handlerFrame.stack.add(getCatchType(handler));
+                mergeInto(instructionList.findHandle(handler.getHandlerPC()), handlerFrame);
+            }
+
+            Frame out = execute(handle, in.copy());
+            Instruction instruction = handle.getInstruction();
+            if (instruction instanceof BranchInstruction) {
+                mergeInto(((BranchInstruction) instruction).getTarget(), out);
+                if (instruction instanceof Select) {
+                    for (InstructionHandle target : ((Select) instruction).getTargets()) mergeInto(target, out);
+                }
+            }
+            if (!isUnconditionalTransfer(instruction)) {
+                if (handle.getNext() == null) throw new IllegalStateException("Execution falls off the end of " + method.getName());
+                mergeInto(handle.getNext(), out);
+            }
+        }
+    }
+
+    // builds the types of "this" and the parameters at the method entry.
+    private Frame getInitialFrame(int maxLocals) {
+        VerificationType[] locals = new VerificationType[maxLocals];
+        Arrays.fill(locals, VerificationType.TOP);
+        int slot = 0;
+        if (!method.isStatic()) {
+            boolean uninitialised = "<init>".equals(method.getName()) && !ClassHierarchy.OBJECT.equals(className);
+            locals[slot++] = uninitialised ? VerificationType.UNINITIALIZED_THIS : VerificationType.object(className);
+        }
+        for (Type argumentType : method.getArgumentTypes()) {
+            locals[slot] = VerificationType.fromType(argumentType);
+            slot += argumentType.getSize(); // the second slot of a long/double stays TOP.
+        }
+        return new Frame(locals, new ArrayList<VerificationType>());
+    }
+
+    private void mergeInto(InstructionHandle handle, Frame incoming) {
+        Frame existing = frames.get(handle);
+        if (existing == null) {
+            frames.put(handle, incoming.copy());
+            worklist.push(handle);
+        } else if (existing.merge(incoming, hierarchy)) {
+            worklist.push(handle);
+        }
+    }
+
+    /** Applies the effect of one instruction to the frame.
+     *
+     * @param handle the instruction to run.
+     * @param frame the types before the instruction, updated in place.
+     * @return the types after the instruction.
+     */
+    private Frame execute(InstructionHandle handle, Frame frame) {
+        Instruction instruction = handle.getInstruction();
+
+        if (instruction instanceof ACONST_NULL) {
+            frame.push(VerificationType.NULL);
+        } else if (instruction instanceof ConstantPushInstruction) {
+            frame.push(((TypedInstruction) instruction).getType(cpgen));
+        } else if (instruction instanceof LDC || instruction instanceof LDC2_W) {
+            frame.push(getConstantType(((CPInstruction) instruction).getIndex()));
+        } else if (instruction instanceof LoadInstruction) {
+            int index = ((LoadInstruction) instruction).getIndex();
+            if (instruction instanceof ALOAD) frame.push(frame.locals[index]);
+            else frame.push(((TypedInstruction) instruction).getType(cpgen));
+        } else if (instruction instanceof StoreInstruction) {
+            storeLocal(frame, ((StoreInstruction) instruction).getIndex(), ((TypedInstruction) instruction).getType(cpgen).getSize());
+        } else if (instruction instanceof ArithmeticInstruction || instruction instanceof ConversionInstruction) {
+            frame.pop(instruction.consumeStack(cpgen));
+            frame.push(((TypedInstruction) instruction).getType(cpgen));
+        } else if (instruction instanceof LCMP || instruction instanceof FCMPL || instruction instanceof FCMPG
+                || instruction instanceof DCMPL || instruction instanceof DCMPG) {
+            frame.pop(instruction.consumeStack(cpgen));
+            frame.push(VerificationType.INTEGER);
+        } else if (instruction instanceof AALOAD) {
+            frame.pop(1);
+            VerificationType array = frame.pop(1);
+            frame.push(getComponentType(array));
+        } else if (instruction instanceof ArrayInstruction) {
+            frame.pop(instruction.consumeStack(cpgen));
+            if (instruction.produceStack(cpgen) > 0) frame.push(((ArrayInstruction) instruction).getType(cpgen));
+        } else if (instruction instanceof StackInstruction) {
+            shuffleStack(frame, instruction);
+        } else if (instruction instanceof FieldInstruction) {
+            frame.pop(instruction.consumeStack(cpgen));
+            if (instruction instanceof GETFIELD || instruction instanceof GETSTATIC) {
+                frame.push(((FieldInstruction) instruction).getFieldType(cpgen));
+            }
+        } else if (instruction instanceof InvokeInstruction) {
+            invoke(frame, (InvokeInstruction) instruction);
+        } else if (instruction instanceof INVOKEDYNAMIC) {
+            INVOKEDYNAMIC invoke = (INVOKEDYNAMIC) instruction;
+            for (Type argumentType : invoke.getArgumentTypes(cpgen)) frame.pop(argumentType.getSize());
+            if (invoke.getReturnType(cpgen) != Type.VOID) frame.push(invoke.getReturnType(cpgen));
+        } else if (instruction instanceof NEW) {
+            frame.push(VerificationType.uninitialized(handle.getPosition()));
+        } else if (instruction instanceof NEWARRAY) {
+            frame.pop(1);
+            frame.push(((NEWARRAY) instruction).getType());
+        } else if (instruction instanceof ANEWARRAY) {
+            frame.pop(1);
+            frame.push(new ArrayType(((ANEWARRAY) instruction).getType(cpgen), 1));
+        } else if (instruction instanceof MULTIANEWARRAY) {
+            frame.pop(((MULTIANEWARRAY) instruction).getDimensions());
+            frame.push(((MULTIANEWARRAY) instruction).getType(cpgen));
+        } else if (instruction instanceof CHECKCAST) {
+            frame.pop(1);
+            frame.push(((CHECKCAST) instruction).getType(cpgen));
+        } else if (instruction instanceof ARRAYLENGTH || instruction instanceof INSTANCEOF) {
+            frame.pop(1);
+            frame.push(VerificationType.INTEGER);
+        } else if (instruction instanceof JsrInstruction || instruction instanceof RET) {
+            throw new IllegalStateException("JSR/RET subroutines cannot be described by stack map frames");
+        } else if (instruction instanceof ReturnInstruction || instruction instanceof ATHROW) {
+            frame.stack.clear();
+        } else if (instruction instanceof IfInstruction || instruction instanceof Select
+                || instruction instanceof MONITORENTER || instruction instanceof MONITOREXIT) {
+            frame.pop(instruction.consumeStack(cpgen));
+        } else if (!(instruction instanceof GotoInstruction || instruction instanceof NOP || instruction instanceof IINC)) {
+            throw new IllegalStateException("Unsupported instruction " + instruction);
+        }
+        return frame;
+    }
+
+    private static void storeLocal(Frame frame, int index, int size) {
+        VerificationType value = frame.pop(size);
+        // overwriting the second half of a long/double destroys the whole value.
+        if (index > 0 && frame.locals[index - 1].isCategory2()) frame.locals[index - 1] = VerificationType.TOP;
+        frame.locals[index] = value;
+        if (size == 2) frame.locals[index + 1] = VerificationType.TOP;
+    }
+
+    private void shuffleStack(Frame frame, Instruction instruction) {
+        int[] shuffle = STACK_SHUFFLES.get(instruction.getOpcode());
+        VerificationType[] popped = new VerificationType[instruction.consumeStack(cpgen)];
+        for (int index = 0; index < popped.length; index++) popped[index] = frame.popSlot();
+        for (int index : shuffle) frame.stack.add(popped[index]);
+    }
+
+    // pops the arguments and receiver, and marks the object as initialised once its constructor has been called.
+    private void invoke(Frame frame, InvokeInstruction invoke) {
+        for (Type argumentType : invoke.getArgumentTypes(cpgen)) frame.pop(argumentType.getSize());
+
+        if (!(invoke instanceof INVOKESTATIC)) {
+            VerificationType receiver = frame.pop(1);
+            if (invoke instanceof INVOKESPECIAL && "<init>".equals(invoke.getMethodName(cpgen))) {
+                VerificationType initialised = receiver == VerificationType.UNINITIALIZED_THIS
+                        ? VerificationType.object(className)
+                        : VerificationType.fromType(invoke.getReferenceType(cpgen));
+                frame.replace(receiver, initialised);
+            }
+        }
+        if (invoke.getReturnType(cpgen) != Type.VOID) frame.push(invoke.getReturnType(cpgen));
+    }
+
+    // <============================================= Frame Encoding ==================================================>
+
+    // the instructions that need a frame: branch targets, handler starts and the instructions after a transfer.
+    private List<InstructionHandle> findFrameHandles(Code code) {
+        Set<InstructionHandle> handles = new TreeSet<InstructionHandle>(new Comparator<InstructionHandle>() {
+            @Override
+            public int compare(InstructionHandle first, InstructionHandle second) {
+                return first.getPosition() - second.getPosition();
+            }
+        });
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            Instruction instruction = handle.getInstruction();
+            if (instruction instanceof BranchInstruction) {
+                handles.add(((BranchInstruction) instruction).getTarget());
+                if (instruction instanceof Select) handles.addAll(Arrays.asList(((Select) instruction).getTargets()));
+            }
+            if (isUnconditionalTransfer(instruction) && handle.getNext() != null) handles.add(handle.getNext());
+        }
+        for (CodeException handler : code.getExceptionTable()) {
+            handles.add(instructionList.findHandle(handler.getHandlerPC()));
+        }
+
+        for (InstructionHandle handle : handles) {
+            if (!frames.containsKey(handle)) {
+                throw new IllegalStateException("Unreachable code at " + handle.getPosition() + " in " + method.getName());
+            }
+        }
+        return new ArrayList<InstructionHandle>(handles);
+    }
+
+    /** Writes the frames using the smallest frame type that describes the change from the previous frame.
+     *
+     * @param frameHandles instructions that need a frame, in code order.
+     * @param initialFrame the implicit frame at the method entry.
+     * @return the StackMapTable attribute.
+     */
+    private StackMapTable encodeFrames(List<InstructionHandle> frameHandles, Frame initialFrame) {
+        ConstantPool constantPool = cpgen.getConstantPool();
+        List<StackMapTableEntry> entries = new ArrayList<StackMapTableEntry>();
+        List<VerificationType> previousLocals = initialFrame.getLocalTypes();
+        int previousOffset = -1;
+
+        for (InstructionHandle handle : frameHandles) {
+            Frame frame = frames.get(handle);
+            List<VerificationType> locals = frame.getLocalTypes();
+            List<VerificationType> stack = frame.getStackTypes();
+            int delta = handle.getPosition() - previousOffset - 1;
+            int localsDifference = locals.size() - previousLocals.size();
+
+            StackMapTableEntry entry;
+            if (stack.isEmpty() && locals.equals(previousLocals)) {
+                entry = delta <= Constants.SAME_FRAME_MAX
+                        ? createEntry(delta, delta, null, null, constantPool)
+                        : createEntry(Constants.SAME_FRAME_EXTENDED, delta, null, null, constantPool);
+            } else if (stack.size() == 1 && locals.equals(previousLocals)) {
+                entry = delta <= Constants.SAME_LOCALS_1_STACK_ITEM_FRAME_MAX - Constants.SAME_LOCALS_1_STACK_ITEM_FRAME
+                        ? createEntry(Constants.SAME_LOCALS_1_STACK_ITEM_FRAME + delta, delta, null, stack, constantPool)
+                        : createEntry(Constants.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED, delta, null, stack, constantPool);
+            } else if (stack.isEmpty() && localsDifference < 0 && localsDifference >= -3
+                    && previousLocals.subList(0, locals.size()).equals(locals)) {
+                entry = createEntry(Constants.SAME_FRAME_EXTENDED + localsDifference, delta, null, null, constantPool);
+            } else if (stack.isEmpty() && localsDifference > 0 && localsDifference <= 3
+                    && locals.subList(0, previousLocals.size()).equals(previousLocals)) {
+                List<VerificationType> appended = locals.subList(previousLocals.size(), locals.size());
+                entry = createEntry(Constants.SAME_FRAME_EXTENDED + localsDifference, delta, appended, null, constantPool);
+            } else {
+                entry = createEntry(Constants.FULL_FRAME, delta, locals, stack, constantPool);
+            }
+            entries.add(entry);
+            previousLocals = locals;
+            previousOffset = handle.getPosition();
+        }
+
+        StackMapTableEntry[] table = entries.toArray(new StackMapTableEntry[entries.size()]);
+        return new StackMapTable(cpgen.addUtf8("StackMapTable"), getTableLength(table), table, constantPool);
+    }
+
+    private StackMapTableEntry createEntry(int frameType, int delta, List<VerificationType> locals,
+                                           List<VerificationType> stack, ConstantPool constantPool) {
+        return new StackMapTableEntry(frameType, delta, toStackMapTypes(locals, constantPool),
+                toStackMapTypes(stack, constantPool), constantPool);
+    }
+
+    private StackMapType[] toStackMapTypes(List<VerificationType> types, ConstantPool constantPool) {
+        if (types == null) return new StackMapType[0];
+        StackMapType[] stackMapTypes = new StackMapType[types.size()];
+        for (int index = 0; index < stackMapTypes.length; index++) {
+            VerificationType type = types.get(index);
+            int typeIndex = -1;
+            if (type.tag == Constants.ITEM_Object) typeIndex = cpgen.addClass(type.name);
+            else if (type.tag == Constants.ITEM_NewObject) typeIndex = type.offset;
+            stackMapTypes[index] = new StackMapType(type.tag, typeIndex, constantPool);
+        }
+        return stackMapTypes;
+    }
+
+    // the attribute length is the frame count plus the size of every dumped frame.
+    private static int getTableLength(StackMapTableEntry[] table) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try {
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (StackMapTableEntry entry : table) entry.dump(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return 2 + bytes.size();
+    }
+
+    // <============================================= Helper Methods ==================================================>
+
+    private Map<InstructionHandle, List<CodeException>> mapExceptionHandlers(Code code) {
+        Map<InstructionHandle, List<CodeException>> handlers = new HashMap<InstructionHandle, List<CodeException>>();
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            List<CodeException> covering = new ArrayList<CodeException>();
+            for (CodeException handler : code.getExceptionTable()) {
+                if (handle.getPosition() >= handler.getStartPC() && handle.getPosition() < handler.getEndPC()) {
+                    covering.add(handler);
+                }
+            }
+            handlers.put(handle, covering);
+        }
+        return handlers;
+    }
+
+    private VerificationType getCatchType(CodeException handler) {
+        if (handler.getCatchType() == 0) return VerificationType.object("java/lang/Throwable"); // finally blocks.
+        return VerificationType.object(cpgen.getConstantPool().getConstantString(handler.getCatchType(), Constants.CONSTANT_Class));
+    }
+
+    private VerificationType getConstantType(int index) {
+        Constant constant = cpgen.getConstant(index);
+        if (constant instanceof ConstantInteger) return VerificationType.INTEGER;
+        if (constant instanceof ConstantFloat) return VerificationType.FLOAT;
+        if (constant instanceof ConstantLong) return VerificationType.LONG;
+        if (constant instanceof ConstantDouble) return VerificationType.DOUBLE;
+        if (constant instanceof ConstantString) return VerificationType.object("java/lang/String");
+        if (constant instanceof ConstantClass) return VerificationType.object("java/lang/Class");
+        if (constant instanceof ConstantMethodType) return VerificationType.object("java/lang/invoke/MethodType");
+        if (constant instanceof ConstantMethodHandle) return VerificationType.object("java/lang/invoke/MethodHandle");
+        throw new IllegalStateException("Unsupported constant " + constant);
+    }
+
+    private static VerificationType getComponentType(VerificationType array) {
+        if (array == VerificationType.NULL) return VerificationType.NULL;
+        if (array.tag != Constants.ITEM_Object || !array.name.startsWith("[")) {
+            throw new IllegalStateException("AALOAD on a non array type " + array);
+        }
+        String component = ClassHierarchy.getComponentName(array.name);
+        if (component == null) throw new IllegalStateException("AALOAD on a primitive array " + array);
+        return VerificationType.object(component);
+    }
+
+    // checks if control can never fall through to the next instruction.
+    private static boolean isUnconditionalTransfer(Instruction instruction) {
+        return instruction instanceof UnconditionalBranch || instruction instanceof ReturnInstruction ||
+                instruction instanceof RET || instruction instanceof Select;
+    }
+
+    // <============================================= Inner Classes ===================================================>
+
+    /**
+     * The type of one local or stack slot, as the verifier sees it. Longs and doubles take two slots, the second
+     * of which is TOP, so that the stack instructions can be modelled slot by slot.
+     */
+    private static final class VerificationType {
+        static final VerificationType TOP = new VerificationType(Constants.ITEM_Bogus, null, -1);
+        static final VerificationType INTEGER = new VerificationType(Constants.ITEM_Integer, null, -1);
+        static final VerificationType FLOAT = new VerificationType(Constants.ITEM_Float, null, -1);
+        static final VerificationType LONG = new VerificationType(Constants.ITEM_Long, null, -1);
+        static final VerificationType DOUBLE = new VerificationType(Constants.ITEM_Double, null, -1);
+        static final VerificationType NULL = new VerificationType(Constants.ITEM_Null, null, -1);
+        static final VerificationType UNINITIALIZED_THIS = new VerificationType(Constants.ITEM_InitObject, null, -1);
+
+        final byte tag;
+        final String name; // internal class name or array descriptor, for ITEM_Object.
+        final int offset; // offset of the NEW instruction, for ITEM_NewObject.
+
+        private VerificationType(byte tag, String name, int offset) {
+            this.tag = tag;
+            this.name = name;
+            this.offset = offset;
+        }
+
+        static VerificationType object(String name) {
+            return new VerificationType(Constants.ITEM_Object, name, -1);
+        }
+
+        static VerificationType uninitialized(int offset) {
+            return new VerificationType(Constants.ITEM_NewObject, null, offset);
+        }
+
+        // booleans, bytes, chars and shorts are all ints to the verifier.
+        static VerificationType fromType(Type type) {
+            switch (type.getType()) {
+                case Constants.T_BOOLEAN: case Constants.T_BYTE: case Constants.T_CHAR: case Constants.T_SHORT:
+                case Constants.T_INT: return INTEGER;
+                case Constants.T_FLOAT: return FLOAT;
+                case Constants.T_LONG: return LONG;
+                case Constants.T_DOUBLE: return DOUBLE;
+                case Constants.T_OBJECT: return object(((ObjectType) type).getClassName().replace('.', '/'));
+                case Constants.T_ARRAY: return object(type.getSignature());
+                default: throw new IllegalStateException("No verification type for " + type);
+            }
+        }
+
+        boolean isCategory2() {
+            return tag == Constants.ITEM_Long || tag == Constants.ITEM_Double;
+        }
+
+        boolean isReference() {
+            return tag == Constants.ITEM_Object || tag == Constants.ITEM_Null;
+        }
+
+        /** Merges two types that meet at the same instruction.
+         *
+         * @return the most specific type both can be used as, TOP if they have nothing in common.
+         */
+        VerificationType merge(VerificationType other, ClassHierarchy hierarchy) {
+            if (equals(other)) return this;
+            if (!isReference() || !other.isReference()) return TOP;
+            if (tag == Constants.ITEM_Null) return other;
+            if (other.tag == Constants.ITEM_Null) return this;
+            return object(hierarchy.getCommonSuperclass(name, other.name));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof VerificationType)) return false;
+            VerificationType type = (VerificationType) other;
+            return tag == type.tag && offset == type.offset && (name == null ? type.name == null : name.equals(type.name));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * tag + offset) + (name == null ? 0 : name.hashCode());
+        }
+
+        @Override
+        public String toString() {
+            return name != null ? name : Constants.ITEM_NAMES[tag] + (offset >= 0 ? "(" + offset + ")" : "");
+        }
+    }
+
+    /**
+     * The types of every local and stack slot before an instruction.
+     */
+    private static final class Frame {
+        final VerificationType[] locals;
+        final List<VerificationType> stack;
+
+        Frame(VerificationType[] locals, List<VerificationType> stack) {
+            this.locals = locals;
+            this.stack = stack;
+        }
+
+        Frame copy() {
+            return new Frame(locals.clone(), new ArrayList<VerificationType>(stack));
+        }
+
+        void push(Type type) {
+            push(VerificationType.fromType(type));
+        }
+
+        void push(VerificationType type) {
+            stack.add(type);
+            if (type.isCategory2()) stack.add(VerificationType.TOP);
+        }
+
+        /** Pops the given number of slots.
+         *
+         * @return the type of the lowest slot that was popped, i.e. the value when a long/double is popped.
+         */
+        VerificationType pop(int slots) {
+            VerificationType value = null;
+            for (int count = 0; count < slots; count++) value = popSlot();
+            return value;
+        }
+
+        VerificationType popSlot() {
+            if (stack.isEmpty()) throw new IllegalStateException("Operand stack underflow");
+            return stack.remove(stack.size() - 1);
+        }
+
+        // swaps every copy of an uninitialised object for its initialised type.
+        void replace(VerificationType from, VerificationType to) {
+            for (int index = 0; index < locals.length; index++) {
+                if (locals[index].equals(from)) locals[index] = to;
+            }
+            for (int index = 0; index < stack.size(); index++) {
+                if (stack.get(index).equals(from)) stack.set(index, to);
+            }
+        }
+
+        /** Merges the incoming frame into this one.
+         *
+         * @return true if any slot of this frame changed.
+         * @throws IllegalStateException if the operand stacks cannot be merged.
+         */
+        boolean merge(Frame incoming, ClassHierarchy hierarchy) {
+            if (stack.size() != incoming.stack.size()) throw new IllegalStateException("Operand stack heights differ");
+            boolean changed = false;
+            for (int index = 0; index < locals.length; index++) {
+                VerificationType merged = locals[index].merge(incoming.locals[index], hierarchy);
+                if (!merged.equals(locals[index])) {
+                    locals[index] = merged;
+                    changed = true;
+                }
+            }
+            for (int index = 0; index < stack.size(); index++) {
+                VerificationType merged = stack.get(index).merge(incoming.stack.get(index), hierarchy);
+                if (merged == VerificationType.TOP && stack.get(index) != VerificationType.TOP) {
+                    throw new IllegalStateException("Incompatible operand stack types " + stack.get(index) + " and " + incoming.stack.get(index));
+                }
+                if (!merged.equals(stack.get(index))) {
+                    stack.set(index, merged);
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        // the locals as written in a frame: one entry per long/double, without the TOP slots at the end.
+        List<VerificationType> getLocalTypes() {
+            List<VerificationType> types = collapse(Arrays.asList(locals));
+            while (!types.isEmpty() && types.get(types.size() - 1) == VerificationType.TOP) types.remove(types.size() - 1);
+            return types;
+        }
+
+        List<VerificationType> getStackTypes() {
+            return collapse(stack);
+        }
+
+        private static List<VerificationType> collapse(List<VerificationType> slots) {
+            List<VerificationType> types = new ArrayList<VerificationType>();
+            for (int index = 0; index < slots.size(); index++) {
+                types.add(slots.get(index));
+                if (slots.get(index).isCategory2()) index++;
+            }
+            return types;
+        }
+    }
+}
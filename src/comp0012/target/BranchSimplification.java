@@ -0,0 +1,34 @@
+package comp0012.target;
+
+public class BranchSimplification {
+    public int methodOne() {
+        int a = 8;
+        int b = 3;
+        if (a > b) {
+            return a - b;
+        }
+        return a + b;
+    }
+
+    public int methodTwo() {
+        int a = 2;
+        int b = 7;
+        int result;
+        if (a > b) {
+            result = a * b;
+        } else {
+            result = a + b;
+        }
+        return result;
+    }
+
+    public int methodThree() {
+        int a = 10;
+        try {
+            System.out.println(a / 2);
+        } catch (ArithmeticException e) {
+            return -1;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,59 @@
+package comp0012.target;
+
+public class CommonSubexpression {
+    private int width = 6;
+    private int height = 7;
+    private volatile int flag = 3;
+    private int[] data = {4, 9, 16};
+
+    public int methodOne(int a, int b) {
+        int x = a * b + a;
+        int y = a * b - b;
+        return x * y;
+    }
+
+    public int methodTwo() {
+        return width * height + width * height;
+    }
+
+    public int methodThree() {
+        int first = width * 2;
+        width = width + 1;
+        int second = width * 2;
+        return first + second;
+    }
+
+    public int methodFour() {
+        int first = height;
+        grow();
+        return first + height;
+    }
+
+    public int methodFive() {
+        return flag + flag;
+    }
+
+    public int methodSix(int i) {
+        int first = data[i] * data[i];
+        data[i] = 5;
+        return first + data[i];
+    }
+
+    public double methodSeven(double a, double b) {
+        return (a + b) * (a + b) - (a + b);
+    }
+
+    public long methodEight(long a, int shift) {
+        long x = (a << shift) ^ a;
+        long y = (a << shift) | a;
+        return x + y;
+    }
+
+    public int methodNine() {
+        return (width * height + width) * (width * height + width);
+    }
+
+    private void grow() {
+        height = height * 10;
+    }
+}
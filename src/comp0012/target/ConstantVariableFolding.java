@@ -2,6 +2,16 @@ package comp0012.target;
 
 public class ConstantVariableFolding
 {
+    // javac joins these into one literal of 40960 line breaks, longer than 65535 bytes once escaped.
+    private static final String LINES = "\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n";
+    private static final String LINES_256 = LINES + LINES + LINES + LINES + LINES + LINES + LINES + LINES
+            + LINES + LINES + LINES + LINES + LINES + LINES + LINES + LINES;
+    private static final String LINES_4096 = LINES_256 + LINES_256 + LINES_256 + LINES_256 + LINES_256 + LINES_256
+            + LINES_256 + LINES_256 + LINES_256 + LINES_256 + LINES_256 + LINES_256 + LINES_256 + LINES_256
+            + LINES_256 + LINES_256;
+    private static final String LINES_40960 = LINES_4096 + LINES_4096 + LINES_4096 + LINES_4096 + LINES_4096
+            + LINES_4096 + LINES_4096 + LINES_4096 + LINES_4096 + LINES_4096;
+
     public int methodOne(){
         int a = 62;
         int b = (a + 764) * 3;
@@ -27,4 +37,10 @@ public class ConstantVariableFolding
         return x > y;
     }
 
-}
\ No newline at end of file
+    public String methodFive(){
+        String text = LINES_40960;
+        int a = 62;
+        int b = a * 2;
+        return text.substring(b);
+    }
+}
@@ -35,4 +35,31 @@ public class DynamicVariableFolding {
         b = a + 2;
         return a * b;
     }
-}
\ No newline at end of file
+
+    public int methodFive(int p) {
+        int x = 3;
+        if (p > 0) {
+            x = 5;
+        }
+        return x + 1;
+    }
+
+    public String methodSix(int n) {
+        int a = 2;
+        int b = 1;
+        for (int i = 0; i < n; i++) {
+            a += 9;
+        }
+        if (a > 1) {
+            a = 1;
+        }
+        System.out.println(a * 3);
+        while (a < 1) {
+            a = a * 2;
+        }
+        for (int i = 0; i < n; i++) {
+            a += 3;
+        }
+        return "" + a + b + n;
+    }
+}
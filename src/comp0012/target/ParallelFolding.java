@@ -0,0 +1,1374 @@
+package comp0012.target;
+
+/**
+ * Enough methods to be split between the method threads (ParallelMethodOptimizer.MIN_METHODS). Method i has shape
+ * i % 5 with constant i, and the bodies of shape 4 are all the same, so the memo is hit from several threads.
+ */
+public class ParallelFolding
+{
+    public static final int METHODS = 220;
+
+    public int method000(){
+        int a = 0;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method001(){
+        int x = 1;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method002(int p){
+        int a = p * 2 + 3;
+        int b = p * 2 + 3;
+        return a + b;
+    }
+
+    public long method003(){
+        long x = 300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method004(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method005(){
+        int a = 5;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method006(){
+        int x = 6;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method007(int p){
+        int a = p * 7 + 3;
+        int b = p * 7 + 3;
+        return a + b;
+    }
+
+    public long method008(){
+        long x = 800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method009(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method010(){
+        int a = 10;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method011(){
+        int x = 11;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method012(int p){
+        int a = p * 12 + 3;
+        int b = p * 12 + 3;
+        return a + b;
+    }
+
+    public long method013(){
+        long x = 1300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method014(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method015(){
+        int a = 15;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method016(){
+        int x = 16;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method017(int p){
+        int a = p * 17 + 3;
+        int b = p * 17 + 3;
+        return a + b;
+    }
+
+    public long method018(){
+        long x = 1800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method019(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method020(){
+        int a = 20;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method021(){
+        int x = 21;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method022(int p){
+        int a = p * 22 + 3;
+        int b = p * 22 + 3;
+        return a + b;
+    }
+
+    public long method023(){
+        long x = 2300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method024(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method025(){
+        int a = 25;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method026(){
+        int x = 26;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method027(int p){
+        int a = p * 27 + 3;
+        int b = p * 27 + 3;
+        return a + b;
+    }
+
+    public long method028(){
+        long x = 2800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method029(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method030(){
+        int a = 30;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method031(){
+        int x = 31;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method032(int p){
+        int a = p * 32 + 3;
+        int b = p * 32 + 3;
+        return a + b;
+    }
+
+    public long method033(){
+        long x = 3300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method034(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method035(){
+        int a = 35;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method036(){
+        int x = 36;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method037(int p){
+        int a = p * 37 + 3;
+        int b = p * 37 + 3;
+        return a + b;
+    }
+
+    public long method038(){
+        long x = 3800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method039(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method040(){
+        int a = 40;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method041(){
+        int x = 41;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method042(int p){
+        int a = p * 42 + 3;
+        int b = p * 42 + 3;
+        return a + b;
+    }
+
+    public long method043(){
+        long x = 4300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method044(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method045(){
+        int a = 45;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method046(){
+        int x = 46;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method047(int p){
+        int a = p * 47 + 3;
+        int b = p * 47 + 3;
+        return a + b;
+    }
+
+    public long method048(){
+        long x = 4800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method049(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method050(){
+        int a = 50;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method051(){
+        int x = 51;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method052(int p){
+        int a = p * 52 + 3;
+        int b = p * 52 + 3;
+        return a + b;
+    }
+
+    public long method053(){
+        long x = 5300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method054(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method055(){
+        int a = 55;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method056(){
+        int x = 56;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method057(int p){
+        int a = p * 57 + 3;
+        int b = p * 57 + 3;
+        return a + b;
+    }
+
+    public long method058(){
+        long x = 5800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method059(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method060(){
+        int a = 60;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method061(){
+        int x = 61;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method062(int p){
+        int a = p * 62 + 3;
+        int b = p * 62 + 3;
+        return a + b;
+    }
+
+    public long method063(){
+        long x = 6300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method064(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method065(){
+        int a = 65;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method066(){
+        int x = 66;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method067(int p){
+        int a = p * 67 + 3;
+        int b = p * 67 + 3;
+        return a + b;
+    }
+
+    public long method068(){
+        long x = 6800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method069(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method070(){
+        int a = 70;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method071(){
+        int x = 71;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method072(int p){
+        int a = p * 72 + 3;
+        int b = p * 72 + 3;
+        return a + b;
+    }
+
+    public long method073(){
+        long x = 7300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method074(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method075(){
+        int a = 75;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method076(){
+        int x = 76;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method077(int p){
+        int a = p * 77 + 3;
+        int b = p * 77 + 3;
+        return a + b;
+    }
+
+    public long method078(){
+        long x = 7800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method079(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method080(){
+        int a = 80;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method081(){
+        int x = 81;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method082(int p){
+        int a = p * 82 + 3;
+        int b = p * 82 + 3;
+        return a + b;
+    }
+
+    public long method083(){
+        long x = 8300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method084(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method085(){
+        int a = 85;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method086(){
+        int x = 86;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method087(int p){
+        int a = p * 87 + 3;
+        int b = p * 87 + 3;
+        return a + b;
+    }
+
+    public long method088(){
+        long x = 8800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method089(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method090(){
+        int a = 90;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method091(){
+        int x = 91;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method092(int p){
+        int a = p * 92 + 3;
+        int b = p * 92 + 3;
+        return a + b;
+    }
+
+    public long method093(){
+        long x = 9300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method094(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method095(){
+        int a = 95;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method096(){
+        int x = 96;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method097(int p){
+        int a = p * 97 + 3;
+        int b = p * 97 + 3;
+        return a + b;
+    }
+
+    public long method098(){
+        long x = 9800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method099(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method100(){
+        int a = 100;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method101(){
+        int x = 101;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method102(int p){
+        int a = p * 102 + 3;
+        int b = p * 102 + 3;
+        return a + b;
+    }
+
+    public long method103(){
+        long x = 10300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method104(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method105(){
+        int a = 105;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method106(){
+        int x = 106;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method107(int p){
+        int a = p * 107 + 3;
+        int b = p * 107 + 3;
+        return a + b;
+    }
+
+    public long method108(){
+        long x = 10800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method109(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method110(){
+        int a = 110;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method111(){
+        int x = 111;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method112(int p){
+        int a = p * 112 + 3;
+        int b = p * 112 + 3;
+        return a + b;
+    }
+
+    public long method113(){
+        long x = 11300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method114(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method115(){
+        int a = 115;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method116(){
+        int x = 116;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method117(int p){
+        int a = p * 117 + 3;
+        int b = p * 117 + 3;
+        return a + b;
+    }
+
+    public long method118(){
+        long x = 11800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method119(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method120(){
+        int a = 120;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method121(){
+        int x = 121;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method122(int p){
+        int a = p * 122 + 3;
+        int b = p * 122 + 3;
+        return a + b;
+    }
+
+    public long method123(){
+        long x = 12300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method124(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method125(){
+        int a = 125;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method126(){
+        int x = 126;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method127(int p){
+        int a = p * 127 + 3;
+        int b = p * 127 + 3;
+        return a + b;
+    }
+
+    public long method128(){
+        long x = 12800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method129(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method130(){
+        int a = 130;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method131(){
+        int x = 131;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method132(int p){
+        int a = p * 132 + 3;
+        int b = p * 132 + 3;
+        return a + b;
+    }
+
+    public long method133(){
+        long x = 13300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method134(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method135(){
+        int a = 135;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method136(){
+        int x = 136;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method137(int p){
+        int a = p * 137 + 3;
+        int b = p * 137 + 3;
+        return a + b;
+    }
+
+    public long method138(){
+        long x = 13800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method139(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method140(){
+        int a = 140;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method141(){
+        int x = 141;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method142(int p){
+        int a = p * 142 + 3;
+        int b = p * 142 + 3;
+        return a + b;
+    }
+
+    public long method143(){
+        long x = 14300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method144(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method145(){
+        int a = 145;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method146(){
+        int x = 146;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method147(int p){
+        int a = p * 147 + 3;
+        int b = p * 147 + 3;
+        return a + b;
+    }
+
+    public long method148(){
+        long x = 14800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method149(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method150(){
+        int a = 150;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method151(){
+        int x = 151;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method152(int p){
+        int a = p * 152 + 3;
+        int b = p * 152 + 3;
+        return a + b;
+    }
+
+    public long method153(){
+        long x = 15300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method154(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method155(){
+        int a = 155;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method156(){
+        int x = 156;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method157(int p){
+        int a = p * 157 + 3;
+        int b = p * 157 + 3;
+        return a + b;
+    }
+
+    public long method158(){
+        long x = 15800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method159(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method160(){
+        int a = 160;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method161(){
+        int x = 161;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method162(int p){
+        int a = p * 162 + 3;
+        int b = p * 162 + 3;
+        return a + b;
+    }
+
+    public long method163(){
+        long x = 16300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method164(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method165(){
+        int a = 165;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method166(){
+        int x = 166;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method167(int p){
+        int a = p * 167 + 3;
+        int b = p * 167 + 3;
+        return a + b;
+    }
+
+    public long method168(){
+        long x = 16800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method169(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method170(){
+        int a = 170;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method171(){
+        int x = 171;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method172(int p){
+        int a = p * 172 + 3;
+        int b = p * 172 + 3;
+        return a + b;
+    }
+
+    public long method173(){
+        long x = 17300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method174(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method175(){
+        int a = 175;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method176(){
+        int x = 176;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method177(int p){
+        int a = p * 177 + 3;
+        int b = p * 177 + 3;
+        return a + b;
+    }
+
+    public long method178(){
+        long x = 17800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method179(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method180(){
+        int a = 180;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method181(){
+        int x = 181;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method182(int p){
+        int a = p * 182 + 3;
+        int b = p * 182 + 3;
+        return a + b;
+    }
+
+    public long method183(){
+        long x = 18300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method184(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method185(){
+        int a = 185;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method186(){
+        int x = 186;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method187(int p){
+        int a = p * 187 + 3;
+        int b = p * 187 + 3;
+        return a + b;
+    }
+
+    public long method188(){
+        long x = 18800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method189(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method190(){
+        int a = 190;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method191(){
+        int x = 191;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method192(int p){
+        int a = p * 192 + 3;
+        int b = p * 192 + 3;
+        return a + b;
+    }
+
+    public long method193(){
+        long x = 19300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method194(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method195(){
+        int a = 195;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method196(){
+        int x = 196;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method197(int p){
+        int a = p * 197 + 3;
+        int b = p * 197 + 3;
+        return a + b;
+    }
+
+    public long method198(){
+        long x = 19800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method199(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method200(){
+        int a = 200;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method201(){
+        int x = 201;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method202(int p){
+        int a = p * 202 + 3;
+        int b = p * 202 + 3;
+        return a + b;
+    }
+
+    public long method203(){
+        long x = 20300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method204(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method205(){
+        int a = 205;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method206(){
+        int x = 206;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method207(int p){
+        int a = p * 207 + 3;
+        int b = p * 207 + 3;
+        return a + b;
+    }
+
+    public long method208(){
+        long x = 20800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method209(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method210(){
+        int a = 210;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method211(){
+        int x = 211;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method212(int p){
+        int a = p * 212 + 3;
+        int b = p * 212 + 3;
+        return a + b;
+    }
+
+    public long method213(){
+        long x = 21300000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method214(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+
+    public int method215(){
+        int a = 215;
+        int b = (a + 764) * 3;
+        return b + 1234 - a;
+    }
+
+    public int method216(){
+        int x = 216;
+        int y = x * 2;
+        y = y - 100;
+        return x + y;
+    }
+
+    public int method217(int p){
+        int a = p * 217 + 3;
+        int b = p * 217 + 3;
+        return a + b;
+    }
+
+    public long method218(){
+        long x = 21800000L;
+        long y = x + 400000;
+        return y - 7;
+    }
+
+    public int method219(){
+        int a = 6;
+        int b = a * 7;
+        return b;
+    }
+}
@@ -0,0 +1,57 @@
+package comp0012.target;
+
+public class SwitchFolding {
+    public int methodOne() {
+        int x = 3;
+        switch (x) {
+            case 1: return 10;
+            case 2: return 20;
+            case 3: return 30;
+            default: return 0;
+        }
+    }
+
+    public int methodTwo() {
+        int x = 500;
+        switch (x) {
+            case 5: return 1;
+            case 500: return 2;
+            case 50000: return 3;
+            default: return 0;
+        }
+    }
+
+    public int methodThree(int x) {
+        if (x == 1) {
+            return 10;
+        } else if (x == 2) {
+            return 20;
+        } else if (x == 4) {
+            return 40;
+        } else if (x == 3) {
+            return 30;
+        }
+        return -1;
+    }
+
+    public int methodFour(int x) {
+        if (x == 0) {
+            return 1;
+        } else if (x == 1000) {
+            return 2;
+        } else if (x == -70000) {
+            return 3;
+        }
+        return 4;
+    }
+
+    public int methodFive(int p) {
+        int x = 1;
+        if (p > 0) x = 2;
+        switch (x) {
+            case 1: return 10;
+            case 2: return 20;
+            default: return 0;
+        }
+    }
+}
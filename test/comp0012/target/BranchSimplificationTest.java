@@ -0,0 +1,102 @@
+package comp0012.target;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.BranchInstruction;
+import org.apache.bcel.generic.GOTO;
+import org.apache.bcel.generic.IADD;
+import org.apache.bcel.generic.IMUL;
+import org.apache.bcel.generic.IfInstruction;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionHandle;
+import org.apache.bcel.generic.InstructionList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Test branch simplification
+ */
+public class BranchSimplificationTest {
+
+    BranchSimplification bs = new BranchSimplification();
+    // javac threads its own jumps, so the goto chains come from the Jasmin class.
+    SimpleFolding sf = new SimpleFolding();
+    private final ByteArrayOutputStream outContent = new ByteArrayOutputStream();
+
+    @Before
+    public void setUpStreams()
+    {
+        System.setOut(new PrintStream(outContent));
+    }
+
+    @After
+    public void cleanUpStreams()
+    {
+        System.setOut(null);
+    }
+
+    @Test
+    public void testMethodOne(){
+        assertEquals(5, bs.methodOne());
+    }
+
+    @Test
+    public void testMethodTwo(){
+        assertEquals(9, bs.methodTwo());
+    }
+
+    @Test
+    public void testMethodThree(){
+        assertEquals(10, bs.methodThree());
+        assertEquals("5\n", outContent.toString());
+    }
+
+    @Test
+    public void testChain(){
+        assertEquals(1, sf.chain(5));
+        assertEquals(-1, sf.chain(-5));
+    }
+
+    @Test
+    public void testConstantBranchesRemoved() throws Exception
+    {
+        assumeTrue(ClassFiles.isOptimised(BranchSimplification.class));
+        JavaClass optimised = ClassFiles.loaded(BranchSimplification.class);
+
+        // a > b is always true in methodOne and always false in methodTwo, so the other block is dead.
+        Instruction[] methodOne = ClassFiles.getInstructions(optimised, "methodOne");
+        assertEquals(0, ClassFiles.count(methodOne, IfInstruction.class));
+        assertEquals(0, ClassFiles.count(methodOne, IADD.class));
+
+        Instruction[] methodTwo = ClassFiles.getInstructions(optimised, "methodTwo");
+        assertEquals(0, ClassFiles.count(methodTwo, IfInstruction.class));
+        assertEquals(0, ClassFiles.count(methodTwo, GOTO.class));
+        assertEquals(0, ClassFiles.count(methodTwo, IMUL.class));
+
+        // the catch block is only reachable through the exception table, it must stay.
+        assertEquals(1, ClassFiles.getMethod(optimised, "methodThree").getCode().getExceptionTable().length);
+    }
+
+    @Test
+    public void testGotoChainsThreaded() throws Exception
+    {
+        assumeTrue(ClassFiles.isOptimised(SimpleFolding.class));
+        JavaClass optimised = ClassFiles.loaded(SimpleFolding.class);
+
+        InstructionList instructionList = new InstructionList(ClassFiles.getMethod(optimised, "chain").getCode().getCode());
+        for (InstructionHandle handle : instructionList.getInstructionHandles()) {
+            if (!(handle.getInstruction() instanceof BranchInstruction)) continue;
+            Instruction target = ((BranchInstruction) handle.getInstruction()).getTarget().getInstruction();
+            assertFalse("branch at " + handle.getPosition() + " jumps to a goto", target instanceof GOTO);
+        }
+        // of the three gotos, one jumped to the next instruction and one was only reachable through the chain.
+        assertEquals(1, ClassFiles.count(instructionList.getInstructions(), GOTO.class));
+    }
+}
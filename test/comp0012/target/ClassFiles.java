@@ -0,0 +1,87 @@
+package comp0012.target;
+
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.InstructionList;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the class files the tests run against, so the tests can check the code the optimiser wrote and not only
+ * what it returns
+ */
+class ClassFiles {
+
+    // javac's (and Jasmin's) output, before optimisation. The tests are run from the project directory.
+    private static final String ORIGINAL_DIR = "build/classes/";
+    // added by ProfileInstrumenter, so the profile run can be told apart from an optimised one.
+    private static final String COUNTERS_FIELD = "$profileCounters";
+
+    private ClassFiles() {
+    }
+
+    /** Parses the class file the test is running against: build/classes, optimised/classes or the instrumented copy.
+     *
+     * @param type the class under test.
+     * @return the parsed class file.
+     */
+    static JavaClass loaded(Class<?> type) throws IOException {
+        String fileName = type.getSimpleName() + ".class";
+        InputStream classFile = type.getResourceAsStream(fileName);
+        try {
+            return new ClassParser(classFile, fileName).parse();
+        } finally {
+            classFile.close();
+        }
+    }
+
+    /** Parses the class file as it was before optimisation.
+     *
+     * @param type the class under test.
+     * @return the parsed class file from build/classes.
+     */
+    static JavaClass original(Class<?> type) throws IOException {
+        return new ClassParser(ORIGINAL_DIR + type.getName().replace('.', '/') + ".class").parse();
+    }
+
+    /** Checks if the tests run against the optimised class, the structural checks only hold there.
+     *
+     * @param type the class under test.
+     * @return false for the original and the instrumented classes.
+     */
+    static boolean isOptimised(Class<?> type) throws IOException {
+        JavaClass loaded = loaded(type);
+        for (Field field : loaded.getFields()) {
+            if (field.getName().equals(COUNTERS_FIELD)) return false;
+        }
+        return !Arrays.equals(loaded.getBytes(), original(type).getBytes());
+    }
+
+    static Method getMethod(JavaClass javaClass, String name) {
+        for (Method method : javaClass.getMethods()) {
+            if (method.getName().equals(name)) return method;
+        }
+        throw new IllegalArgumentException("No method " + name + " in " + javaClass.getClassName());
+    }
+
+    static Instruction[] getInstructions(JavaClass javaClass, String name) {
+        InstructionList instructionList = new InstructionList(getMethod(javaClass, name).getCode().getCode());
+        Instruction[] instructions = instructionList.getInstructions();
+        instructionList.dispose();
+        return instructions;
+    }
+
+    // counts the instructions of the given type (i.e. IfInstruction.class, GOTO.class) in a method.
+    static int count(Instruction[] instructions, Class<? extends Instruction> type) {
+        int count = 0;
+        for (Instruction instruction : instructions) {
+            if (type.isInstance(instruction)) count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,98 @@
+package comp0012.target;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Test common subexpression elimination
+ */
+
+public class CommonSubexpressionTest
+{
+    CommonSubexpression cs = new CommonSubexpression();
+
+    @Test
+    public void testMethodOne()
+    {
+        assertEquals(840, cs.methodOne(5, 6));
+    }
+
+    @Test
+    public void testMethodTwo()
+    {
+        assertEquals(84, cs.methodTwo());
+    }
+
+    @Test
+    public void testMethodThree()
+    {
+        assertEquals(26, cs.methodThree());
+    }
+
+    @Test
+    public void testMethodFour()
+    {
+        assertEquals(77, cs.methodFour());
+    }
+
+    @Test
+    public void testMethodFive()
+    {
+        assertEquals(6, cs.methodFive());
+    }
+
+    @Test
+    public void testMethodSix()
+    {
+        assertEquals(86, cs.methodSix(1));
+    }
+
+    @Test
+    public void testMethodSeven()
+    {
+        assertEquals(20.0, cs.methodSeven(2.0, 3.0), 0.0);
+    }
+
+    @Test
+    public void testMethodEight()
+    {
+        assertEquals(((3L << 2) ^ 3L) + ((3L << 2) | 3L), cs.methodEight(3L, 2));
+    }
+
+    @Test
+    public void testMethodNine()
+    {
+        assertEquals(2304, cs.methodNine());
+    }
+
+    @Test
+    public void testCodeSizeDoesNotGrow() throws Exception
+    {
+        assumeTrue(ClassFiles.isOptimised(CommonSubexpression.class));
+        JavaClass original = ClassFiles.original(CommonSubexpression.class);
+        JavaClass optimised = ClassFiles.loaded(CommonSubexpression.class);
+
+        // a reuse must never make a method longer than javac wrote it.
+        for (Method method : original.getMethods()) {
+            if (method.getCode() == null) continue;
+            int originalLength = method.getCode().getCode().length;
+            int length = ClassFiles.getMethod(optimised, method.getName()).getCode().getCode().length;
+            assertTrue(method.getName() + " grew from " + originalLength + " to " + length + " bytes", length <= originalLength);
+        }
+    }
+
+    @Test
+    public void testReuseShortensCode() throws Exception
+    {
+        assumeTrue(ClassFiles.isOptimised(CommonSubexpression.class));
+        // the second (width * height + width) is 14 bytes of field loads and arithmetic, the reuse is a single load.
+        int originalLength = ClassFiles.getMethod(ClassFiles.original(CommonSubexpression.class), "methodNine").getCode().getCode().length;
+        int length = ClassFiles.getMethod(ClassFiles.loaded(CommonSubexpression.class), "methodNine").getCode().getCode().length;
+        assertTrue("methodNine has " + length + " bytes, javac wrote " + originalLength, length < originalLength);
+    }
+}
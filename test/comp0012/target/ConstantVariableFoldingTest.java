@@ -30,6 +30,11 @@ public class ConstantVariableFoldingTest {
     public void testMethodFour(){
         assertEquals(true, cvf.methodFour());
     }
+
+    @Test
+    public void testMethodFive(){
+        assertEquals(40836, cvf.methodFive().length());
+    }
     
 
 }
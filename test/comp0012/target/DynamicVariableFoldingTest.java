@@ -60,5 +60,15 @@ public class DynamicVariableFoldingTest
         assertEquals(24, dvf.methodFour());
     }
 
+    @Test
+    public void testMethodFive(){
+        assertEquals(4, dvf.methodFive(0));
+        assertEquals(6, dvf.methodFive(1));
+    }
 
-}
\ No newline at end of file
+    @Test
+    public void testMethodSix(){
+        assertEquals("712", dvf.methodSix(2));
+        assertEquals("110", dvf.methodSix(0));
+    }
+}
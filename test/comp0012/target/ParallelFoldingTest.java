@@ -0,0 +1,52 @@
+package comp0012.target;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Test a class large enough to have its methods optimised on several threads
+ */
+public class ParallelFoldingTest {
+
+    ParallelFolding pf = new ParallelFolding();
+
+    @Test
+    public void testEveryMethod() throws Exception {
+        for (int index = 0; index < ParallelFolding.METHODS; index++) {
+            String name = String.format("method%03d", index);
+            assertEquals(name, expected(index, 3), invoke(name, 3));
+        }
+    }
+
+    @Test
+    public void testMethodCount(){
+        int methods = 0;
+        for (Method method : ParallelFolding.class.getDeclaredMethods()) {
+            if (method.getName().startsWith("method")) methods++;
+        }
+        assertEquals(ParallelFolding.METHODS, methods);
+    }
+
+    // the value method i returns for the parameter p, following the shapes in ParallelFolding.
+    private static long expected(int index, int p){
+        switch (index % 5) {
+            case 0: return (index + 764) * 3 + 1234 - index;
+            case 1: return index + index * 2 - 100;
+            case 2: return 2 * (p * index + 3);
+            case 3: return index * 100000L + 400000 - 7;
+            default: return 42;
+        }
+    }
+
+    private long invoke(String name, int p) throws Exception {
+        for (Method method : ParallelFolding.class.getMethods()) {
+            if (!method.getName().equals(name)) continue;
+            Object result = method.getParameterTypes().length == 0 ? method.invoke(pf) : method.invoke(pf, p);
+            return ((Number) result).longValue();
+        }
+        throw new NoSuchMethodException(name);
+    }
+}
@@ -35,4 +35,9 @@ public class SimpleFoldingTest {
         assertEquals("12412\n", outContent.toString());
     }
 
+    @Test
+    public void testSubroutine(){
+        assertEquals(42, sf.subroutine());
+    }
+
 }
@@ -0,0 +1,85 @@
+package comp0012.target;
+
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.generic.IfInstruction;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.generic.LOOKUPSWITCH;
+import org.apache.bcel.generic.Select;
+import org.apache.bcel.generic.TABLESWITCH;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Test switch folding and if-chain to switch conversion
+ */
+public class SwitchFoldingTest {
+
+    SwitchFolding sf = new SwitchFolding();
+
+    @Test
+    public void testMethodOne(){
+        assertEquals(30, sf.methodOne());
+    }
+
+    @Test
+    public void testMethodTwo(){
+        assertEquals(2, sf.methodTwo());
+    }
+
+    @Test
+    public void testMethodThree(){
+        assertEquals(10, sf.methodThree(1));
+        assertEquals(20, sf.methodThree(2));
+        assertEquals(30, sf.methodThree(3));
+        assertEquals(40, sf.methodThree(4));
+        assertEquals(-1, sf.methodThree(5));
+        assertEquals(-1, sf.methodThree(0));
+    }
+
+    @Test
+    public void testMethodFour(){
+        assertEquals(1, sf.methodFour(0));
+        assertEquals(2, sf.methodFour(1000));
+        assertEquals(3, sf.methodFour(-70000));
+        assertEquals(4, sf.methodFour(7));
+    }
+
+    @Test
+    public void testMethodFive(){
+        assertEquals(10, sf.methodFive(0));
+        assertEquals(20, sf.methodFive(1));
+    }
+
+    @Test
+    public void testConstantSwitchesFolded() throws Exception
+    {
+        assumeTrue(ClassFiles.isOptimised(SwitchFolding.class));
+        JavaClass optimised = ClassFiles.loaded(SwitchFolding.class);
+
+        for (String name : new String[] {"methodOne", "methodTwo"}) {
+            Instruction[] instructions = ClassFiles.getInstructions(optimised, name);
+            assertEquals(name, 0, ClassFiles.count(instructions, Select.class));
+            assertEquals(name, 2, instructions.length); // only the matching case is left: push and return.
+        }
+        // x is only known on each path, so the switch stays.
+        assertEquals(1, ClassFiles.count(ClassFiles.getInstructions(optimised, "methodFive"), Select.class));
+    }
+
+    @Test
+    public void testIfChainsBecomeSwitches() throws Exception
+    {
+        assumeTrue(ClassFiles.isOptimised(SwitchFolding.class));
+        JavaClass optimised = ClassFiles.loaded(SwitchFolding.class);
+
+        // dense cases (1 to 4) give a table, sparse ones (-70000, 0, 1000) a lookup.
+        Instruction[] methodThree = ClassFiles.getInstructions(optimised, "methodThree");
+        assertEquals(1, ClassFiles.count(methodThree, TABLESWITCH.class));
+        assertEquals(0, ClassFiles.count(methodThree, IfInstruction.class));
+
+        Instruction[] methodFour = ClassFiles.getInstructions(optimised, "methodFour");
+        assertEquals(1, ClassFiles.count(methodFour, LOOKUPSWITCH.class));
+        assertEquals(0, ClassFiles.count(methodFour, IfInstruction.class));
+    }
+}